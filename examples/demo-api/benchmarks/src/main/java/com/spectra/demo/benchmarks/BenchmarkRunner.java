@@ -0,0 +1,31 @@
+package com.spectra.demo.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point for benchmarks.jar
+ *
+ * Runs the selected benchmarks once per thread count with the GC profiler
+ * attached. Thread counts come from -Dbench.threads (default 1,4,16); every
+ * other argument is passed through to JMH, e.g. a benchmark regex or
+ * -p storeSize=100000.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions cli = new CommandLineOptions(args);
+        for (String threads : System.getProperty("bench.threads", "1,4,16").split(",")) {
+            new Runner(new OptionsBuilder()
+                    .parent(cli)
+                    .threads(Integer.parseInt(threads.trim()))
+                    .addProfiler(GCProfiler.class)
+                    .build())
+                    .run();
+        }
+    }
+}
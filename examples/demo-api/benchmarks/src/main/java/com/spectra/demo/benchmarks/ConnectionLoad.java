@@ -0,0 +1,359 @@
+package com.spectra.demo.benchmarks;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Closed-loop HTTP load over many concurrent keep-alive connections
+ *
+ * Used to compare the servlet thread pool with demo.server.threads=virtual at
+ * connection counts far above the pool size. Every connection sends a request,
+ * reads the whole response, waits -Dload.think-ms and sends the next, so idle
+ * pollers can be modelled with a think time. A few selector threads drive all
+ * connections; latency is measured from the first byte written to the last
+ * byte read, after -Dload.warmup-seconds. Run against a started server with
+ * {@code java -cp target/benchmarks.jar com.spectra.demo.benchmarks.ConnectionLoad [url]}.
+ */
+public class ConnectionLoad {
+
+    private static final long MAX_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    public static void main(String[] args) throws Exception {
+        URI url = URI.create(args.length > 0 ? args[0] : "http://localhost:8081/api/v1/users/1");
+        int connections = Integer.getInteger("load.connections", 10_000);
+        int selectors = Integer.getInteger("load.selectors", Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+        long warmupNanos = TimeUnit.SECONDS.toNanos(Long.getLong("load.warmup-seconds", 10));
+        long measureNanos = TimeUnit.SECONDS.toNanos(Long.getLong("load.seconds", 30));
+        long thinkNanos = TimeUnit.MILLISECONDS.toNanos(Long.getLong("load.think-ms", 0));
+        byte[] request = request(url, System.getProperty("load.method", "GET"), System.getProperty("load.body"));
+        InetSocketAddress address = new InetSocketAddress(url.getHost(), url.getPort() > 0 ? url.getPort() : 80);
+
+        long start = System.nanoTime();
+        long measureFrom = start + warmupNanos;
+        long measureUntil = measureFrom + measureNanos;
+        List<Driver> drivers = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < selectors; i++) {
+            int share = connections / selectors + (i < connections % selectors ? 1 : 0);
+            Driver driver = new Driver(address, request, share, thinkNanos, measureFrom, measureUntil);
+            Thread thread = new Thread(driver, "load-" + i);
+            drivers.add(driver);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Histogram latency = new Histogram(MAX_LATENCY_NANOS, 3);
+        long completed = 0;
+        long failed = 0;
+        long errors = 0;
+        long open = 0;
+        for (Driver driver : drivers) {
+            latency.add(driver.latency);
+            completed += driver.completed;
+            failed += driver.failed;
+            errors += driver.errors;
+            open += driver.open;
+        }
+        System.out.printf("%s %s, %,d connections (%,d open at the end), think %d ms%n",
+                System.getProperty("load.method", "GET"), url, connections, open, TimeUnit.NANOSECONDS.toMillis(thinkNanos));
+        System.out.printf("requests  %,12d  %,10.0f req/s%n", completed, completed / (measureNanos / 1e9));
+        System.out.printf("non-2xx   %,12d%n", failed);
+        System.out.printf("io errors %,12d%n", errors);
+        for (double percentile : new double[] {50, 90, 99, 99.9}) {
+            System.out.printf("p%-8s %12.2f ms%n", percentile, latency.getValueAtPercentile(percentile) / 1e6);
+        }
+        System.out.printf("max       %12.2f ms%n", latency.getMaxValue() / 1e6);
+    }
+
+    private static byte[] request(URI url, String method, String body) {
+        String path = url.getRawPath().isEmpty() ? "/" : url.getRawPath();
+        if (url.getRawQuery() != null) {
+            path += "?" + url.getRawQuery();
+        }
+        byte[] content = body == null ? new byte[0] : body.getBytes(StandardCharsets.UTF_8);
+        StringBuilder head = new StringBuilder()
+                .append(method.toUpperCase(Locale.ROOT)).append(' ').append(path).append(" HTTP/1.1\r\n")
+                .append("Host: ").append(url.getAuthority()).append("\r\n")
+                .append("Accept: application/json\r\n");
+        if (body != null) {
+            head.append("Content-Type: application/json\r\n")
+                    .append("Content-Length: ").append(content.length).append("\r\n");
+        }
+        byte[] headBytes = head.append("\r\n").toString().getBytes(StandardCharsets.US_ASCII);
+        byte[] request = new byte[headBytes.length + content.length];
+        System.arraycopy(headBytes, 0, request, 0, headBytes.length);
+        System.arraycopy(content, 0, request, headBytes.length, content.length);
+        return request;
+    }
+
+    /**
+     * One selector thread and the connections it owns
+     */
+    private static final class Driver implements Runnable {
+
+        private final InetSocketAddress address;
+        private final byte[] request;
+        private final int connections;
+        private final long thinkNanos;
+        private final long measureFrom;
+        private final long measureUntil;
+        // The think time is the same for every connection, so they become due in the order they were queued
+        private final ArrayDeque<Connection> thinking = new ArrayDeque<>();
+        final Histogram latency = new Histogram(MAX_LATENCY_NANOS, 3);
+        long completed;
+        long failed;
+        long errors;
+        int open;
+
+        Driver(InetSocketAddress address, byte[] request, int connections, long thinkNanos,
+               long measureFrom, long measureUntil) {
+            this.address = address;
+            this.request = request;
+            this.connections = connections;
+            this.thinkNanos = thinkNanos;
+            this.measureFrom = measureFrom;
+            this.measureUntil = measureUntil;
+        }
+
+        @Override
+        public void run() {
+            try (Selector selector = Selector.open()) {
+                for (int i = 0; i < connections; i++) {
+                    connect(selector, new Connection(request));
+                }
+                loop(selector);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private void loop(Selector selector) throws IOException {
+            long now;
+            while ((now = System.nanoTime()) < measureUntil) {
+                while (!thinking.isEmpty() && thinking.peekFirst().dueAt <= now) {
+                    Connection connection = thinking.pollFirst();
+                    try {
+                        next(selector, connection, now);
+                    } catch (IOException e) {
+                        fail(connection);
+                    }
+                }
+                long timeoutNanos = thinking.isEmpty() ? measureUntil - now : thinking.peekFirst().dueAt - now;
+                selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(timeoutNanos)));
+                now = System.nanoTime();
+                for (SelectionKey key : selector.selectedKeys()) {
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isConnectable()) {
+                            connection.channel.finishConnect();
+                            connection.connected = true;
+                            open++;
+                            send(connection, now);
+                        } else if (key.isWritable()) {
+                            write(connection);
+                        } else if (key.isReadable()) {
+                            read(selector, connection, now);
+                        }
+                    } catch (IOException e) {
+                        fail(connection);
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+        }
+
+        private void connect(Selector selector, Connection connection) throws IOException {
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.connect(address);
+            connection.channel = channel;
+            connection.key = channel.register(selector, SelectionKey.OP_CONNECT, connection);
+        }
+
+        private void close(Connection connection) throws IOException {
+            connection.key.cancel();
+            connection.channel.close();
+            if (connection.connected) {
+                connection.connected = false;
+                open--;
+            }
+        }
+
+        private void fail(Connection connection) throws IOException {
+            errors++;
+            close(connection);
+        }
+
+        /**
+         * Send the next request, first reconnecting if the server closed the connection after the last one.
+         */
+        private void next(Selector selector, Connection connection, long now) throws IOException {
+            if (connection.connected) {
+                send(connection, now);
+            } else {
+                connect(selector, connection);
+            }
+        }
+
+        private void send(Connection connection, long now) throws IOException {
+            connection.sentAt = now;
+            connection.out.rewind();
+            write(connection);
+        }
+
+        private void write(Connection connection) throws IOException {
+            connection.channel.write(connection.out);
+            connection.key.interestOps(connection.out.hasRemaining() ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+
+        private void read(Selector selector, Connection connection, long now) throws IOException {
+            if (connection.channel.read(connection.in) < 0) {
+                throw new IOException("Connection closed by server");
+            }
+            int status = connection.response();
+            if (status == 0) {
+                if (!connection.in.hasRemaining()) {
+                    connection.grow();
+                }
+                return;
+            }
+            if (connection.sentAt >= measureFrom) {
+                completed++;
+                if (status < 200 || status >= 300) {
+                    failed++;
+                }
+                latency.recordValue(Math.min(now - connection.sentAt, MAX_LATENCY_NANOS));
+            }
+            connection.key.interestOps(0);
+            if (connection.closing) {
+                // Tomcat closes a keep-alive connection after server.tomcat.max-keep-alive-requests
+                close(connection);
+            }
+            if (thinkNanos == 0) {
+                next(selector, connection, now);
+            } else {
+                connection.dueAt = now + thinkNanos;
+                thinking.addLast(connection);
+            }
+        }
+    }
+
+    /**
+     * A keep-alive connection and the response it is reading
+     */
+    private static final class Connection {
+
+        private static final byte[] HEADER_END = {'\r', '\n', '\r', '\n'};
+        private static final byte[] LAST_CHUNK = {'\r', '\n', '0', '\r', '\n', '\r', '\n'};
+
+        final ByteBuffer out;
+        ByteBuffer in = ByteBuffer.allocate(16 * 1024);
+        SocketChannel channel;
+        SelectionKey key;
+        boolean connected;
+        // The last response carried Connection: close
+        boolean closing;
+        long sentAt;
+        long dueAt;
+
+        Connection(byte[] request) {
+            this.out = ByteBuffer.wrap(request).asReadOnlyBuffer();
+        }
+
+        /**
+         * @return the status code once the whole response has been read, or 0 while it is incomplete
+         */
+        int response() throws IOException {
+            int headerEnd = indexOf(in, HEADER_END, 0);
+            if (headerEnd < 0) {
+                return 0;
+            }
+            String head = new String(in.array(), 0, headerEnd, StandardCharsets.US_ASCII);
+            int bodyStart = headerEnd + HEADER_END.length;
+            int length = 0;
+            boolean chunked = false;
+            boolean close = false;
+            for (String line : head.split("\r\n")) {
+                String lower = line.toLowerCase(Locale.ROOT);
+                if (lower.startsWith("content-length:")) {
+                    length = Integer.parseInt(lower.substring("content-length:".length()).trim());
+                } else if (lower.startsWith("transfer-encoding:") && lower.contains("chunked")) {
+                    chunked = true;
+                } else if (lower.startsWith("connection:") && lower.contains("close")) {
+                    close = true;
+                }
+            }
+            int end;
+            if (chunked) {
+                // Bodies here never contain CRLF, so the first last-chunk marker ends the response
+                int last = indexOf(in, LAST_CHUNK, bodyStart - 2);
+                if (last < 0) {
+                    return 0;
+                }
+                end = last + LAST_CHUNK.length;
+            } else {
+                end = bodyStart + length;
+            }
+            if (in.position() < end) {
+                if (end > in.capacity()) {
+                    grow(end);
+                }
+                return 0;
+            }
+            if (in.position() > end) {
+                throw new IOException("Unexpected bytes after the response");
+            }
+            int status = Integer.parseInt(head.substring(9, 12));
+            in.clear();
+            closing = close;
+            return status;
+        }
+
+        void grow() {
+            grow(in.capacity() * 2);
+        }
+
+        private void grow(int capacity) {
+            ByteBuffer larger = ByteBuffer.allocate(capacity);
+            in.flip();
+            larger.put(in);
+            in = larger;
+        }
+
+        private static int indexOf(ByteBuffer buffer, byte[] pattern, int from) {
+            byte[] bytes = buffer.array();
+            int limit = buffer.position() - pattern.length;
+            outer:
+            for (int i = Math.max(0, from); i <= limit; i++) {
+                for (int j = 0; j < pattern.length; j++) {
+                    if (bytes[i + j] != pattern[j]) {
+                        continue outer;
+                    }
+                }
+                return i;
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.spectra.demo.benchmarks;
+
+import com.spectra.demo.repository.ConcurrentLongMap;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * get/put throughput of ConcurrentLongMap against ConcurrentHashMap&lt;Long, V&gt;
+ *
+ * Both maps hold entries keyed 1..entries, the shape of the user store.
+ * put overwrites existing keys so the map size stays fixed; the boxing of
+ * the key on the ConcurrentHashMap side is part of what is being measured.
+ * See MemoryFootprint for bytes per entry.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class LongMapBenchmark {
+
+    static final Object VALUE = new Object();
+
+    @Param({"1000000"})
+    int entries;
+
+    ConcurrentHashMap<Long, Object> boxed;
+    ConcurrentLongMap<Object> primitive;
+
+    @Setup(Level.Trial)
+    public void populate() {
+        boxed = new ConcurrentHashMap<>();
+        primitive = new ConcurrentLongMap<>();
+        for (long key = 1; key <= entries; key++) {
+            boxed.put(key, VALUE);
+            primitive.put(key, VALUE);
+        }
+    }
+
+    long randomKey() {
+        return ThreadLocalRandom.current().nextLong(1, entries + 1);
+    }
+
+    @Benchmark
+    public Object concurrentHashMapGet() {
+        return boxed.get(randomKey());
+    }
+
+    @Benchmark
+    public Object concurrentLongMapGet() {
+        return primitive.get(randomKey());
+    }
+
+    @Benchmark
+    public Object concurrentHashMapPut() {
+        return boxed.put(randomKey(), VALUE);
+    }
+
+    @Benchmark
+    public Object concurrentLongMapPut() {
+        return primitive.put(randomKey(), VALUE);
+    }
+}
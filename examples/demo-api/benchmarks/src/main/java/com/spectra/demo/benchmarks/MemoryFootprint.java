@@ -0,0 +1,35 @@
+package com.spectra.demo.benchmarks;
+
+import com.spectra.demo.repository.ConcurrentLongMap;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bytes per entry of ConcurrentLongMap against ConcurrentHashMap&lt;Long, V&gt;
+ *
+ * Every entry shares one value object, so the reported size is the map's own
+ * overhead: nodes, boxed keys and tables. Run with
+ * {@code java -cp target/benchmarks.jar com.spectra.demo.benchmarks.MemoryFootprint [entries]}.
+ */
+public class MemoryFootprint {
+
+    public static void main(String[] args) {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Object value = new Object();
+
+        ConcurrentHashMap<Long, Object> boxed = new ConcurrentHashMap<>();
+        ConcurrentLongMap<Object> primitive = new ConcurrentLongMap<>();
+        for (long key = 1; key <= entries; key++) {
+            boxed.put(key, value);
+            primitive.put(key, value);
+        }
+
+        report("ConcurrentHashMap<Long, V>", GraphLayout.parseInstance(boxed).totalSize(), entries);
+        report("ConcurrentLongMap<V>", GraphLayout.parseInstance(primitive).totalSize(), entries);
+    }
+
+    private static void report(String name, long bytes, int entries) {
+        System.out.printf("%-28s %,14d bytes  %6.1f bytes/entry%n", name, bytes, (double) bytes / entries);
+    }
+}
@@ -0,0 +1,215 @@
+package com.spectra.demo.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.spectra.demo.cache.UserJsonCache;
+import com.spectra.demo.cache.UserListCache;
+import com.spectra.demo.controller.UserController;
+import com.spectra.demo.controller.UserResponses;
+import com.spectra.demo.logging.EventLogger;
+import com.spectra.demo.metrics.UserMetrics;
+import com.spectra.demo.model.User;
+import com.spectra.demo.repository.InMemoryUserRepository;
+import com.spectra.demo.repository.OffHeapUserRepository;
+import com.spectra.demo.repository.ShardedUserRepository;
+import com.spectra.demo.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.ResponseEntity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JMH harness for the UserController hot paths
+ *
+ * Handlers are invoked directly on a controller pre-populated with storeSize
+ * users in each store implementation, so the numbers leave out HTTP. Writes
+ * return the User itself and include no JSON encoding. Reads return bytes
+ * from the controller's JSON caches. getUserById hits the per-user cache
+ * unless the store holds more users than it does, in which case most calls
+ * include Jackson encoding one user. Listings encode once per store version
+ * and are served from the cache after that. Run with the GC profiler (see
+ * BenchmarkRunner) to get allocation rates per operation.
+ *
+ * After every iteration the users created during it are deleted again, so
+ * each iteration starts from storeSize users.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class UserControllerBenchmark {
+
+    static final String[] DEPARTMENTS = {"Engineering", "Marketing", "Sales", "HR"};
+    static final int DELETE_BATCH = 10_000;
+
+    @Param({"1000", "100000", "1000000"})
+    int storeSize;
+
+    @Param({"memory", "sharded", "offheap"})
+    String storeType;
+
+    // IDs a thread or shard claims at a time; the offheap store allocates under its lock and ignores it
+    @Param({"1", "64"})
+    int idBlockSize;
+
+    UserController controller;
+    UserRepository repository;
+    // IDs of the seeded users (demo data included) in ascending order, so random picks always hit even when
+    // blocks leave gaps, and their emails at the same index
+    long[] seededIds;
+    String[] seededEmails;
+    // Unique suffix source for emails created during measurement
+    final AtomicLong emailSequence = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void populate() {
+        UserRepository repository;
+        if ("offheap".equals(storeType)) {
+            repository = new OffHeapUserRepository();
+        } else if ("sharded".equals(storeType)) {
+            repository = new ShardedUserRepository(16, idBlockSize);
+        } else {
+            repository = new InMemoryUserRepository(idBlockSize);
+        }
+        ObjectMapper objectMapper = new ObjectMapper();
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        UserJsonCache jsonCache = new UserJsonCache(objectMapper, 10_000, meters);
+        UserListCache listCache = new UserListCache(objectMapper, 64 * 1024 * 1024, false, meters);
+        UserResponses responses = new UserResponses(repository, new EventLogger(EventLogger.Level.OFF, 2),
+                new UserMetrics(meters), jsonCache, listCache, null);
+        controller = new UserController(responses, repository, objectMapper);
+        for (int i = 0; i < storeSize - 3; i++) {
+            controller.createUser(newUser("seed-" + i + "@bench.example.com", DEPARTMENTS[i % DEPARTMENTS.length]));
+        }
+        User[] seeded = repository.findAll().stream()
+                .sorted(Comparator.comparing(User::getId))
+                .toArray(User[]::new);
+        seededIds = Arrays.stream(seeded).mapToLong(User::getId).toArray();
+        seededEmails = Arrays.stream(seeded).map(User::getEmail).toArray(String[]::new);
+        this.repository = repository;
+    }
+
+    /**
+     * Delete the users created during the iteration, so the next one starts from storeSize users again.
+     */
+    @TearDown(Level.Iteration)
+    public void restoreStoreSize() {
+        if (repository.count() == seededIds.length) {
+            return;
+        }
+        List<Long> created = new ArrayList<>();
+        repository.forEach(user -> {
+            if (Arrays.binarySearch(seededIds, user.getId()) < 0) {
+                created.add(user.getId());
+            }
+        });
+        created.forEach(controller::deleteUser);
+    }
+
+    static User newUser(String email, String department) {
+        return new User(null, "Bench User", email, 30, department);
+    }
+
+    long randomId() {
+        long id;
+        do {
+            id = seededIds[ThreadLocalRandom.current().nextInt(seededIds.length)];
+            // ID 999 is the controller's simulated server error
+        } while (id == 999);
+        return id;
+    }
+
+    String uniqueEmail() {
+        return "bench-" + emailSequence.getAndIncrement() + "@bench.example.com";
+    }
+
+    @Benchmark
+    public ResponseEntity<byte[]> getUserById() {
+        return controller.getUserById(randomId(), null);
+    }
+
+    @Benchmark
+    public ResponseEntity<User> createUser() {
+        return controller.createUser(newUser(uniqueEmail(), "Engineering"));
+    }
+
+    @Benchmark
+    public ResponseEntity<User> createUserDuplicateEmail() {
+        return controller.createUser(newUser("john.doe@example.com", "Engineering"));
+    }
+
+    /**
+     * Keeps the user's email, so the email index is left alone and this measures the update itself.
+     */
+    @Benchmark
+    public ResponseEntity<User> updateUser() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int user = random.nextInt(seededIds.length);
+        String department = DEPARTMENTS[random.nextInt(DEPARTMENTS.length)];
+        return controller.updateUser(seededIds[user], newUser(seededEmails[user], department), null);
+    }
+
+    /**
+     * Each call deletes a user created for it before the iteration, so an
+     * iteration is a fixed batch of DELETE_BATCH deletes per thread and the
+     * score is the time the batch takes. The store starts the iteration that
+     * many users per thread above storeSize.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5, batchSize = DELETE_BATCH)
+    @Measurement(iterations = 5, batchSize = DELETE_BATCH)
+    public ResponseEntity<Void> deleteUser(DeleteTargets targets) {
+        return controller.deleteUser(targets.ids[targets.next++]);
+    }
+
+    /**
+     * A create/delete pair against a store of stable size.
+     */
+    @Benchmark
+    public ResponseEntity<Void> createThenDeleteUser() {
+        User created = controller.createUser(newUser(uniqueEmail(), "Sales")).getBody();
+        return controller.deleteUser(created.getId());
+    }
+
+    @Benchmark
+    public ResponseEntity<byte[]> getUsersByDepartment() {
+        int department = ThreadLocalRandom.current().nextInt(DEPARTMENTS.length);
+        return controller.getUsersByDepartment(DEPARTMENTS[department], null, null);
+    }
+
+    @Benchmark
+    public ResponseEntity<byte[]> getAllUsersPage() {
+        return controller.getAllUsers(100, randomId(), false, null, null);
+    }
+
+    @Benchmark
+    public ResponseEntity<byte[]> getAllUsersUnpaginated() {
+        return controller.getAllUsers(100, null, true, null, null);
+    }
+
+    /**
+     * Users for one thread to delete during the next iteration, created before it starts
+     */
+    @State(Scope.Thread)
+    public static class DeleteTargets {
+        final long[] ids = new long[DELETE_BATCH];
+        int next;
+
+        @Setup(Level.Iteration)
+        public void create(UserControllerBenchmark benchmark) {
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = benchmark.controller.createUser(newUser(benchmark.uniqueEmail(), "Sales")).getBody().getId();
+            }
+            next = 0;
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package com.spectra.demo.bulk;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.spectra.demo.logging.EventLogger;
+import com.spectra.demo.metrics.UserMetrics;
+import com.spectra.demo.model.BatchOperation;
+import com.spectra.demo.model.ImportSummary;
+import com.spectra.demo.model.User;
+import com.spectra.demo.repository.UserRepository;
+import com.spectra.demo.repository.WriteResult;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Imports users from newline-delimited JSON in bounded memory
+ *
+ * The request thread reads the stream a chunk of lines at a time and hands
+ * each chunk to a worker pool that parses and validates it. Chunks are
+ * inserted in file order, each as one store batch, so an email that appears
+ * twice keeps its first line. A chunk ends after CHUNK_LINES lines or
+ * CHUNK_CHARS characters, and at most a few chunks per worker, holding at
+ * most MAX_CHARS_IN_FLIGHT characters together, are in flight: once either
+ * limit is reached, the reader waits for the oldest to be inserted and stops
+ * pulling from the socket, which pushes back on the client. With persistence
+ * on, inserting a chunk also waits whenever the log has a full backlog of
+ * records to write, so a disk slower than parsing slows the import down
+ * instead of filling memory. If the import fails, chunks not yet inserted are
+ * cancelled.
+ */
+@Component
+public class NdjsonUserImporter {
+
+    static final int CHUNK_LINES = 1000;
+    static final int CHUNK_CHARS = 1024 * 1024;
+    // About 16 MB of UTF-16 per import, however many workers there are
+    static final long MAX_CHARS_IN_FLIGHT = 8 * 1024 * 1024;
+    static final int MAX_LINE_CHARS = 64 * 1024;
+    static final int MAX_REPORTED_REJECTIONS = 100;
+    static final long PROGRESS_EVERY_LINES = 100_000;
+
+    private static final int LINE = 0;
+    private static final int EOF = 1;
+    private static final int TOO_LONG = 2;
+
+    private final UserRepository users;
+    private final EventLogger events;
+    private final UserMetrics metrics;
+    private final Validator validator;
+    private final ObjectReader userReader;
+    private final ExecutorService workers;
+    private final int maxChunksInFlight;
+
+    public NdjsonUserImporter(UserRepository users, EventLogger events, UserMetrics metrics,
+                              Validator validator, ObjectMapper objectMapper) {
+        this.users = users;
+        this.events = events;
+        this.metrics = metrics;
+        this.validator = validator;
+        this.userReader = objectMapper.readerFor(User.class);
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        AtomicInteger threads = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(parallelism, task -> {
+            Thread thread = new Thread(task, "demo-import-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.maxChunksInFlight = parallelism * 2;
+    }
+
+    @PreDestroy
+    public void stop() {
+        workers.shutdownNow();
+    }
+
+    public ImportSummary importUsers(InputStream body) throws IOException {
+        long started = System.nanoTime();
+        LineReader reader = new LineReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        Progress progress = new Progress();
+        Deque<Chunk> inFlight = new ArrayDeque<>();
+        StringBuilder line = new StringBuilder();
+        long lineNumber = 0;
+
+        try {
+            Chunk chunk = new Chunk();
+            int status;
+            do {
+                status = reader.readLine(line);
+                if (status == EOF && line.length() == 0) {
+                    break;
+                }
+                lineNumber++;
+                chunk.lastLine = lineNumber;
+                if (status == TOO_LONG) {
+                    chunk.rejectUnparsed(lineNumber, "Line longer than " + MAX_LINE_CHARS + " characters");
+                } else if (!isBlank(line)) {
+                    chunk.add(lineNumber, line.toString());
+                }
+                if (chunk.size() == CHUNK_LINES || chunk.chars >= CHUNK_CHARS) {
+                    submit(chunk, inFlight, progress);
+                    chunk = new Chunk();
+                }
+            } while (status != EOF);
+            submit(chunk, inFlight, progress);
+            while (!inFlight.isEmpty()) {
+                insert(inFlight.poll(), progress);
+            }
+        } finally {
+            // Empty unless the import failed: stop the workers on chunks nobody will insert
+            inFlight.forEach(pending -> pending.parsed.cancel(true));
+        }
+
+        long durationMs = (System.nanoTime() - started) / 1_000_000;
+        events.info("users.import", "imported", progress.imported, "rejected", progress.rejected);
+        return new ImportSummary(lineNumber, progress.imported, progress.rejected, progress.rejections, durationMs);
+    }
+
+    private void submit(Chunk chunk, Deque<Chunk> inFlight, Progress progress) {
+        while (!inFlight.isEmpty() && (inFlight.size() >= maxChunksInFlight
+                || progress.charsInFlight + chunk.chars > MAX_CHARS_IN_FLIGHT)) {
+            insert(inFlight.poll(), progress);
+        }
+        chunk.parsed = workers.submit(() -> parse(chunk));
+        inFlight.add(chunk);
+        progress.charsInFlight += chunk.chars;
+    }
+
+    /**
+     * Worker side: turn raw lines into validated users.
+     */
+    private Chunk parse(Chunk chunk) {
+        for (int i = 0; i < chunk.lines.size(); i++) {
+            long lineNumber = chunk.lineNumbers.get(i);
+            User user;
+            try {
+                user = userReader.readValue(chunk.lines.get(i));
+            } catch (JsonProcessingException e) {
+                chunk.reject(lineNumber, "Malformed JSON: " + e.getOriginalMessage());
+                continue;
+            }
+            if (user == null) {
+                chunk.reject(lineNumber, "Expected a JSON object");
+                continue;
+            }
+            Set<ConstraintViolation<User>> violations = validator.validate(user);
+            if (!violations.isEmpty()) {
+                chunk.reject(lineNumber, violations.stream()
+                        .map(ConstraintViolation::getMessage)
+                        .sorted()
+                        .collect(Collectors.joining("; ")));
+                continue;
+            }
+            chunk.accept(lineNumber, new BatchOperation(BatchOperation.Type.CREATE, null, user));
+        }
+        // Raw text is no longer needed; drop it before the chunk waits in the queue
+        chunk.lines.clear();
+        return chunk;
+    }
+
+    /**
+     * Request side: wait for the oldest chunk and write its users as one batch.
+     */
+    private void insert(Chunk pending, Progress progress) {
+        Chunk chunk;
+        try {
+            chunk = pending.parsed.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Import interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Import chunk failed", e.getCause());
+        }
+        progress.charsInFlight -= chunk.chars;
+
+        List<WriteResult> results = users.applyBatch(chunk.creates);
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i).isOk()) {
+                progress.imported++;
+            } else {
+                chunk.reject(chunk.createLineNumbers.get(i), "Email already in use");
+                metrics.duplicateEmail(UserMetrics.Operation.IMPORT);
+            }
+        }
+        chunk.rejections.sort((a, b) -> Long.compare(a.getLine(), b.getLine()));
+        for (ImportSummary.Rejection rejection : chunk.rejections) {
+            progress.reject(rejection);
+        }
+
+        long before = progress.linesDone;
+        progress.linesDone = Math.max(before, chunk.lastLine);
+        if (before / PROGRESS_EVERY_LINES != progress.linesDone / PROGRESS_EVERY_LINES) {
+            events.info("users.import.progress", "lines", progress.linesDone, "imported", progress.imported);
+        }
+    }
+
+    private static boolean isBlank(CharSequence line) {
+        for (int i = 0; i < line.length(); i++) {
+            if (!Character.isWhitespace(line.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Splits a character stream into lines through a reusable buffer, keeping
+     * at most MAX_LINE_CHARS of any line.
+     */
+    private static final class LineReader {
+        private final Reader reader;
+        private final char[] buffer = new char[64 * 1024];
+        private int position;
+        private int limit;
+
+        LineReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * @return LINE, EOF when the stream ended (the builder may still hold a last
+         *         unterminated line) or TOO_LONG when the rest of an overlong line was skipped
+         */
+        int readLine(StringBuilder line) throws IOException {
+            line.setLength(0);
+            boolean tooLong = false;
+            while (true) {
+                if (position == limit) {
+                    limit = reader.read(buffer);
+                    position = 0;
+                    if (limit < 0) {
+                        limit = 0;
+                        return tooLong ? TOO_LONG : EOF;
+                    }
+                }
+                int start = position;
+                while (position < limit && buffer[position] != '\n') {
+                    position++;
+                }
+                int room = MAX_LINE_CHARS - line.length();
+                int length = position - start;
+                line.append(buffer, start, Math.min(length, room));
+                tooLong |= length > room;
+                if (position < limit) {
+                    position++;
+                    return tooLong ? TOO_LONG : LINE;
+                }
+            }
+        }
+    }
+
+    private static final class Chunk {
+        final List<String> lines = new ArrayList<>(CHUNK_LINES);
+        final List<Long> lineNumbers = new ArrayList<>(CHUNK_LINES);
+        final List<BatchOperation> creates = new ArrayList<>(CHUNK_LINES);
+        final List<Long> createLineNumbers = new ArrayList<>(CHUNK_LINES);
+        final List<ImportSummary.Rejection> rejections = new ArrayList<>();
+        int size;
+        // Characters of the lines handed to the worker
+        int chars;
+        long lastLine;
+        // Set by the request thread when the chunk is handed to a worker
+        Future<Chunk> parsed;
+
+        void add(long lineNumber, String line) {
+            lines.add(line);
+            lineNumbers.add(lineNumber);
+            size++;
+            chars += line.length();
+        }
+
+        /**
+         * Reject a line the reader could not even hand to a worker.
+         */
+        void rejectUnparsed(long lineNumber, String error) {
+            reject(lineNumber, error);
+            size++;
+        }
+
+        void accept(long lineNumber, BatchOperation create) {
+            creates.add(create);
+            createLineNumbers.add(lineNumber);
+        }
+
+        void reject(long lineNumber, String error) {
+            rejections.add(new ImportSummary.Rejection(lineNumber, error));
+        }
+
+        int size() {
+            return size;
+        }
+    }
+
+    private static final class Progress {
+        final List<ImportSummary.Rejection> rejections = new ArrayList<>();
+        long imported;
+        long rejected;
+        long linesDone;
+        long charsInFlight;
+
+        void reject(ImportSummary.Rejection rejection) {
+            rejected++;
+            if (rejections.size() < MAX_REPORTED_REJECTIONS) {
+                rejections.add(rejection);
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.spectra.demo.bulk;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.spectra.demo.persistence.SnapshotScheduler;
+import com.spectra.demo.persistence.UserSnapshot;
+import com.spectra.demo.repository.UserRepository;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exports the whole user table for copying it between environments
+ *
+ * The binary format is the snapshot file format (see UserSnapshot): a small
+ * header, then length-prefixed UTF-8 fields per user, several times smaller
+ * than the JSON listing. When the mutation log is enabled the export is the
+ * snapshot file, copied to the response as it is instead of re-encoding every
+ * user; if writes were logged since the latest snapshot, a new one is taken
+ * first, so the export holds every write made before the request. Without
+ * persistence the snapshot is written to a temporary file first so the header
+ * can carry the exact count.
+ */
+@Component
+public class UserExporter {
+
+    public enum Format { BIN, NDJSON }
+
+    /**
+     * DEFLATE uses the fastest compression level, trading ratio for speed.
+     */
+    public enum Compression { NONE, GZIP, DEFLATE }
+
+    private static final int COPY_BUFFER_BYTES = 64 * 1024;
+
+    private final UserRepository users;
+    private final ObjectProvider<SnapshotScheduler> snapshots;
+    private final ObjectWriter writer;
+
+    public UserExporter(UserRepository users, ObjectProvider<SnapshotScheduler> snapshots, ObjectMapper objectMapper) {
+        this.users = users;
+        this.snapshots = snapshots;
+        this.writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    /**
+     * Prepare an export; a binary one is fully written to disk before this
+     * returns. The caller closes it once it is sent or abandoned.
+     */
+    public Export export(Format format, Compression compression) throws IOException {
+        if (format == Format.NDJSON) {
+            return new Export(format, compression, null, null, -1);
+        }
+        SnapshotScheduler scheduler = snapshots.getIfAvailable();
+        if (scheduler != null) {
+            // Opened now so a snapshot replacing the file later cannot change what is sent
+            FileChannel channel = FileChannel.open(scheduler.currentSnapshot(), StandardOpenOption.READ);
+            return new Export(format, compression, channel, null, channel.size());
+        }
+        Path file = Files.createTempFile("users-export", ".bin");
+        try {
+            UserSnapshot.write(file, 0, users.nextId(), users);
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            return new Export(format, compression, channel, file, channel.size());
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    /**
+     * A prepared export, written to the response when Spring calls writeTo.
+     * Closing it releases the snapshot and deletes a temporary file.
+     */
+    public final class Export implements StreamingResponseBody, Closeable {
+
+        private final Format format;
+        private final Compression compression;
+        private final FileChannel snapshot;
+        private final Path temporaryFile;
+        private final long size;
+
+        private Export(Format format, Compression compression, FileChannel snapshot, Path temporaryFile, long size) {
+            this.format = format;
+            this.compression = compression;
+            this.snapshot = snapshot;
+            this.temporaryFile = temporaryFile;
+            this.size = size;
+        }
+
+        public String getContentType() {
+            switch (compression) {
+                case GZIP:
+                    return "application/gzip";
+                case DEFLATE:
+                    return "application/zlib";
+                default:
+                    return format == Format.BIN ? "application/octet-stream" : "application/x-ndjson";
+            }
+        }
+
+        public String getFilename() {
+            String name = format == Format.BIN ? "users.bin" : "users.ndjson";
+            switch (compression) {
+                case GZIP:
+                    return name + ".gz";
+                case DEFLATE:
+                    return name + ".zz";
+                default:
+                    return name;
+            }
+        }
+
+        /**
+         * @return body length in bytes, or -1 when it is only known once written
+         */
+        public long getContentLength() {
+            return compression == Compression.NONE ? size : -1;
+        }
+
+        /**
+         * @return true if the binary export is the persisted snapshot rather than a temporary copy
+         */
+        public boolean isFromSnapshot() {
+            return snapshot != null && temporaryFile == null;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            if (compression == Compression.NONE) {
+                writeBody(out);
+                return;
+            }
+            if (compression == Compression.GZIP) {
+                GZIPOutputStream compressed = new GZIPOutputStream(out, COPY_BUFFER_BYTES);
+                writeBody(compressed);
+                compressed.finish();
+                return;
+            }
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                DeflaterOutputStream compressed = new DeflaterOutputStream(out, deflater, COPY_BUFFER_BYTES);
+                writeBody(compressed);
+                compressed.finish();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (snapshot != null) {
+                    snapshot.close();
+                }
+            } finally {
+                if (temporaryFile != null) {
+                    Files.deleteIfExists(temporaryFile);
+                }
+            }
+        }
+
+        private void writeBody(OutputStream out) throws IOException {
+            if (format == Format.NDJSON) {
+                writeNdjson(out);
+                return;
+            }
+            WritableByteChannel target = Channels.newChannel(out);
+            for (long position = 0; position < size; ) {
+                position += snapshot.transferTo(position, size - position, target);
+            }
+        }
+    }
+
+    private void writeNdjson(OutputStream out) throws IOException {
+        try (JsonGenerator generator = writer.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+            users.forEach(user -> {
+                try {
+                    writer.writeValue(generator, user);
+                    generator.writeRaw('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @return the format named by the query parameter, or null if unknown
+     */
+    public static Format parseFormat(String value) {
+        return parse(Format.class, value);
+    }
+
+    /**
+     * @return the compression named by the query parameter, or null if unknown
+     */
+    public static Compression parseCompression(String value) {
+        return parse(Compression.class, value);
+    }
+
+    private static <E extends Enum<E>> E parse(Class<E> type, String value) {
+        try {
+            return Enum.valueOf(type, value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.spectra.demo.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.benmanes.caffeine.cache.stats.ConcurrentStatsCounter;
+import com.spectra.demo.model.User;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.UncheckedIOException;
+
+/**
+ * JSON bytes of recently read users, so hot users skip Jackson entirely
+ *
+ * Bounded by entry count with Caffeine's W-TinyLFU policy, which keeps the
+ * frequently read users resident even when a scan of cold IDs passes
+ * through. Entries are keyed by ID and carry the user version they encode:
+ * writers invalidate what they change, and a reader that raced a write
+ * notices the version mismatch and re-encodes, so stale bytes are never
+ * served. Hit, miss and eviction counts are published as the cache.* meters
+ * tagged cache=users.json.
+ */
+@Component
+public class UserJsonCache {
+
+    private final Cache<Long, Entry> cache;
+    // Hits and misses are counted here rather than by Caffeine, which would count an outdated entry as a hit
+    private final ConcurrentStatsCounter stats = new ConcurrentStatsCounter();
+    private final ObjectWriter writer;
+
+    public UserJsonCache(ObjectMapper objectMapper,
+                         @Value("${demo.cache.user-json.max-entries:10000}") long maxEntries,
+                         MeterRegistry meters) {
+        this.writer = objectMapper.writerFor(User.class);
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .recordStats(() -> stats)
+                .build();
+        CaffeineCacheMetrics.monitor(meters, cache, "users.json");
+    }
+
+    /**
+     * @return the user encoded as it would be by the JSON message converter
+     */
+    public byte[] json(User user) {
+        long id = user.getId();
+        Entry cached = cache.asMap().get(id);
+        if (cached != null && cached.version == user.getVersion()) {
+            stats.recordHits(1);
+            return cached.json;
+        }
+        stats.recordMisses(1);
+        Entry encoded = new Entry(user.getVersion(), encode(user));
+        // Never let a reader that lost a race replace a newer encoding with an older one
+        cache.asMap().merge(id, encoded, (current, candidate) -> candidate.version >= current.version ? candidate : current);
+        return encoded.json;
+    }
+
+    public void invalidate(long id) {
+        cache.invalidate(id);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    private byte[] encode(User user) {
+        try {
+            return writer.writeValueAsBytes(user);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static final class Entry {
+        final long version;
+        final byte[] json;
+
+        Entry(long version, byte[] json) {
+            this.version = version;
+            this.json = json;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.spectra.demo.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.benmanes.caffeine.cache.stats.ConcurrentStatsCounter;
+import com.spectra.demo.model.User;
+import com.spectra.demo.repository.UserPage;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Encoded JSON of user listings, reused until a write changes them
+ *
+ * Each listing is stored with the store version it was read at: the global
+ * version for pages and the full list, the department's own version for a
+ * department listing. A lookup at a newer version rebuilds the listing, so
+ * a write only invalidates the listings it can have changed. Cached bodies
+ * are byte arrays that go to the response in one write; a gzip variant is
+ * compressed the first time a client accepts it and kept with the entry.
+ * The cache is bounded by the total size of its bodies, and publishes the
+ * cache.* meters tagged cache=users.lists.
+ */
+@Component
+public class UserListCache {
+
+    private final Cache<String, Listing> cache;
+    // Hits and misses are counted here rather than by Caffeine, which would count an outdated entry as a hit
+    private final ConcurrentStatsCounter stats = new ConcurrentStatsCounter();
+    private final ObjectWriter writer;
+    private final boolean gzip;
+
+    public UserListCache(ObjectMapper objectMapper,
+                         @Value("${demo.cache.user-lists.max-bytes:67108864}") long maxBytes,
+                         @Value("${demo.cache.user-lists.gzip:true}") boolean gzip,
+                         MeterRegistry meters) {
+        this.writer = objectMapper.writerFor(TypeFactory.defaultInstance().constructCollectionType(List.class, User.class));
+        this.gzip = gzip;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String key, Listing listing) -> listing.weight())
+                .recordStats(() -> stats)
+                .build();
+        CaffeineCacheMetrics.monitor(meters, cache, "users.lists");
+    }
+
+    public static String pageKey(Long after, int limit) {
+        return "page:" + after + ":" + limit;
+    }
+
+    public static String allKey() {
+        return "all";
+    }
+
+    public static String departmentKey(String department) {
+        return "department:" + department.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @param version store version read before the source is asked for users
+     * @param source reads the users when the cached listing is missing or older than version
+     */
+    public Listing listing(String key, long version, Supplier<UserPage> source) {
+        Listing cached = cache.asMap().get(key);
+        if (cached != null && cached.version == version) {
+            stats.recordHits(1);
+            return cached;
+        }
+        stats.recordMisses(1);
+        UserPage page = source.get();
+        Listing built = new Listing(version, encode(page.getUsers()), null, page.getUsers().size(), page.getNextCursor());
+        // Never let a reader that lost a race replace a newer listing with an older one
+        cache.asMap().merge(key, built, (current, candidate) -> candidate.version >= current.version ? candidate : current);
+        return built;
+    }
+
+    /**
+     * @return the gzip-encoded body, compressed now if this listing has none yet
+     */
+    public byte[] gzipped(String key, Listing listing) {
+        if (listing.gzip != null) {
+            return listing.gzip;
+        }
+        Listing compressed = listing.withGzip(compress(listing.json));
+        // Replace only the listing compressed, so the cache re-weighs it and never resurrects an old one
+        cache.asMap().replace(key, listing, compressed);
+        return compressed.gzip;
+    }
+
+    /**
+     * @return true if the gzip variant is enabled and the client accepts it
+     */
+    public boolean shouldGzip(String acceptEncoding) {
+        if (!gzip || acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (!parts[0].trim().equalsIgnoreCase("gzip")) {
+                continue;
+            }
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(parameter.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    private byte[] encode(List<User> users) {
+        try {
+            return writer.writeValueAsBytes(users);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] compress(byte[] json) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(json.length / 4 + 64);
+        try (GZIPOutputStream out = new GZIPOutputStream(buffer, 64 * 1024)) {
+            out.write(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * One encoded listing; immutable so it can be handed to any number of responses.
+     */
+    public static final class Listing {
+        private final long version;
+        private final byte[] json;
+        private final byte[] gzip;
+        private final int count;
+        private final Long nextCursor;
+
+        private Listing(long version, byte[] json, byte[] gzip, int count, Long nextCursor) {
+            this.version = version;
+            this.json = json;
+            this.gzip = gzip;
+            this.count = count;
+            this.nextCursor = nextCursor;
+        }
+
+        private Listing withGzip(byte[] gzip) {
+            return new Listing(version, json, gzip, count, nextCursor);
+        }
+
+        private int weight() {
+            return json.length + (gzip != null ? gzip.length : 0);
+        }
+
+        public byte[] getJson() {
+            return json;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * @return ID to pass as the cursor for the next page, or null on the last page
+         */
+        public Long getNextCursor() {
+            return nextCursor;
+        }
+    }
+}
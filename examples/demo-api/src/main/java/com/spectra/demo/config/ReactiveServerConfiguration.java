@@ -0,0 +1,23 @@
+package com.spectra.demo.config;
+
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * Serves the reactive profile from Reactor Netty
+ *
+ * Tomcat stays on the classpath for the default servlet stack, and Spring
+ * Boot would otherwise prefer it as the reactive server too, running
+ * WebFlux on a servlet container's threads.
+ */
+@Configuration
+@Profile("reactive")
+public class ReactiveServerConfiguration {
+
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+}
@@ -0,0 +1,117 @@
+package com.spectra.demo.config;
+
+import com.spectra.demo.cache.UserJsonCache;
+import com.spectra.demo.logging.EventLogger;
+import com.spectra.demo.replication.FollowerRoutingFilter;
+import com.spectra.demo.replication.LeaderSequenceFilter;
+import com.spectra.demo.replication.ReplicationClient;
+import com.spectra.demo.replication.ReplicationLog;
+import com.spectra.demo.replication.ReplicationServer;
+import com.spectra.demo.repository.UserRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.Profiles;
+
+import java.io.IOException;
+
+/**
+ * Wires the replication role selected by demo.replication.role
+ *
+ * A leader appends its writes to a ReplicationLog (see StoreConfiguration)
+ * and serves it to followers on demo.replication.port. A follower tails the
+ * leader's log into its own store and forwards writes to the leader's HTTP
+ * endpoint. Replication sits in front of the servlet controllers only.
+ */
+@Configuration
+public class ReplicationConfiguration {
+
+    private static final String ROLE = "demo.replication.role";
+
+    private final ObjectProvider<ReplicationClient> follower;
+
+    public ReplicationConfiguration(Environment environment, @Value("${demo.replication.role:none}") String role,
+                                    ObjectProvider<ReplicationClient> follower) {
+        if (!"none".equalsIgnoreCase(role) && environment.acceptsProfiles(Profiles.of("reactive"))) {
+            throw new IllegalStateException("demo.replication.role=" + role + " is not supported with the reactive profile");
+        }
+        this.follower = follower;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = ROLE, havingValue = "leader")
+    public ReplicationLog replicationLog(@Value("${demo.replication.log-capacity:100000}") int capacity) {
+        return new ReplicationLog(capacity);
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = ROLE, havingValue = "leader")
+    public ReplicationServer replicationServer(
+            ReplicationLog log,
+            UserRepository users,
+            @Value("${demo.replication.bind-address:127.0.0.1}") String bindAddress,
+            @Value("${demo.replication.port:7070}") int port,
+            EventLogger events,
+            MeterRegistry meters) throws IOException {
+        ReplicationServer server = new ReplicationServer(bindAddress, port, log, users, events);
+        Gauge.builder("replication.sequence", log, ReplicationLog::lastSequence)
+                .description("Sequence of the last write in the replication log")
+                .register(meters);
+        Gauge.builder("replication.followers", server, ReplicationServer::followerCount)
+                .description("Followers connected to this leader")
+                .register(meters);
+        return server;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = ROLE, havingValue = "leader")
+    public LeaderSequenceFilter leaderSequenceFilter(ReplicationLog log) {
+        return new LeaderSequenceFilter(log);
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = ROLE, havingValue = "follower")
+    public ReplicationClient replicationClient(
+            UserRepository users,
+            UserJsonCache jsonCache,
+            @Value("${demo.replication.leader-host:127.0.0.1}") String leaderHost,
+            @Value("${demo.replication.port:7070}") int port,
+            EventLogger events,
+            MeterRegistry meters) {
+        ReplicationClient replication = new ReplicationClient(leaderHost, port, users, jsonCache, events);
+        Gauge.builder("replication.sequence", replication, ReplicationClient::appliedSequence)
+                .description("Sequence of the last leader write applied here")
+                .register(meters);
+        Gauge.builder("replication.lag", replication, ReplicationClient::lag)
+                .description("Leader writes not applied here yet")
+                .register(meters);
+        return replication;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = ROLE, havingValue = "follower")
+    public FollowerRoutingFilter followerRoutingFilter(
+            ReplicationClient replication,
+            @Value("${demo.replication.leader-url:http://127.0.0.1:8080}") String leaderUrl,
+            @Value("${demo.replication.read-your-writes:true}") boolean readYourWrites,
+            @Value("${demo.replication.wait-timeout-ms:2000}") long waitMillis,
+            EventLogger events) {
+        return new FollowerRoutingFilter(replication, leaderUrl, readYourWrites, waitMillis, events);
+    }
+
+    /**
+     * Start following only once the controllers are up: the first copy must
+     * replace the demo data they seed an empty store with, not the other way round.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startFollowing() {
+        follower.ifAvailable(ReplicationClient::start);
+    }
+}
@@ -0,0 +1,52 @@
+package com.spectra.demo.config;
+
+import com.spectra.demo.logging.EventLogger;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs each Tomcat request on its own virtual thread when
+ * demo.server.threads is virtual
+ *
+ * Tomcat's platform-thread pool (server.tomcat.threads.max, 200 by default)
+ * caps the requests in progress, however many of them are only waiting,
+ * e.g. for a sync-durability fsync. Virtual threads lift that cap, leaving
+ * server.tomcat.max-connections as the limit. The build targets Java 11, so
+ * the JDK 21 API is looked up reflectively and startup fails if the running
+ * JDK does not have it.
+ */
+@Configuration
+@ConditionalOnProperty(name = "demo.server.threads", havingValue = "virtual")
+public class ServerThreadsConfiguration {
+
+    private static final String THREAD_NAME_PREFIX = "http-vt-";
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandler(EventLogger events) {
+        ThreadFactory threads = virtualThreadFactory();
+        events.info("server.threads", "mode", "virtual");
+        // Nothing to pool or shut down: Tomcat stops dispatching before it closes, and each thread ends with its request
+        Executor perRequest = task -> threads.newThread(task).start();
+        return protocolHandler -> protocolHandler.setExecutor(perRequest);
+    }
+
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> ofVirtual = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            builder = ofVirtual.getMethod("name", String.class, long.class).invoke(builder, THREAD_NAME_PREFIX, 0L);
+            return (ThreadFactory) ofVirtual.getMethod("factory").invoke(builder);
+        } catch (NoSuchMethodException | ClassNotFoundException e) {
+            throw new IllegalStateException("demo.server.threads=virtual requires JDK 21 or later, running on "
+                    + System.getProperty("java.version"), e);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Cannot create virtual threads", e);
+        }
+    }
+}
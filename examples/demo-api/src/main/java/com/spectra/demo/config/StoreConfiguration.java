@@ -0,0 +1,116 @@
+package com.spectra.demo.config;
+
+import com.spectra.demo.logging.EventLogger;
+import com.spectra.demo.persistence.Durability;
+import com.spectra.demo.persistence.JournaledUserRepository;
+import com.spectra.demo.persistence.MutationLog;
+import com.spectra.demo.persistence.SnapshotScheduler;
+import com.spectra.demo.persistence.UserSnapshot;
+import com.spectra.demo.replication.ReplicationLog;
+import com.spectra.demo.repository.InMemoryUserRepository;
+import com.spectra.demo.repository.OffHeapUserRepository;
+import com.spectra.demo.repository.ShardedUserRepository;
+import com.spectra.demo.repository.UserRepository;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Wires the user store selected by demo.store.type and, unless
+ * demo.persistence.durability is none, puts a write-ahead log in front of it.
+ * On startup the latest snapshot is loaded and the log tail after it replayed.
+ * On a replication leader, writes are also appended to the replication log.
+ */
+@Configuration
+public class StoreConfiguration {
+
+    static final String LOG_FILE = "users.wal";
+    static final String SNAPSHOT_FILE = "users.snap";
+    private static final String PERSISTENCE_ENABLED = "!'${demo.persistence.durability:none}'.equalsIgnoreCase('none')";
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnExpression(PERSISTENCE_ENABLED)
+    public MutationLog mutationLog(
+            @Value("${demo.persistence.directory:data}") String directory,
+            @Value("${demo.persistence.durability:none}") Durability durability,
+            @Value("${demo.persistence.batch-interval-ms:5}") long batchIntervalMillis,
+            @Value("${demo.persistence.max-queued-bytes:16777216}") long maxQueuedBytes,
+            EventLogger events) throws IOException {
+        return new MutationLog(Paths.get(directory, LOG_FILE), durability, batchIntervalMillis, maxQueuedBytes, events);
+    }
+
+    @Bean
+    public UserRepository userRepository(
+            @Value("${demo.store.type:memory}") String storeType,
+            @Value("${demo.store.shards:16}") int shards,
+            @Value("${demo.store.id-block-size:1}") int idBlockSize,
+            @Value("${demo.persistence.directory:data}") String directory,
+            ObjectProvider<MutationLog> mutationLog,
+            ObjectProvider<ReplicationLog> replicationLog,
+            EventLogger events) throws IOException {
+        UserRepository store;
+        if ("offheap".equalsIgnoreCase(storeType)) {
+            store = new OffHeapUserRepository();
+        } else if ("sharded".equalsIgnoreCase(storeType)) {
+            store = new ShardedUserRepository(shards, idBlockSize);
+        } else {
+            store = new InMemoryUserRepository(idBlockSize);
+        }
+
+        MutationLog log = mutationLog.getIfAvailable();
+        if (log == null) {
+            return replicated(store, replicationLog.getIfAvailable());
+        }
+
+        long started = System.nanoTime();
+        UserSnapshot snapshot = UserSnapshot.load(Paths.get(directory, SNAPSHOT_FILE), store);
+        long snapshotSequence = 0;
+        if (snapshot != null) {
+            snapshotSequence = snapshot.getSequence();
+            events.info("store.snapshot.loaded", "users", snapshot.getCount(),
+                    "ms", (System.nanoTime() - started) / 1_000_000);
+        }
+
+        Path file = log.getFile();
+        long bytesBefore = Files.size(file);
+        started = System.nanoTime();
+        long records = log.replay(store, snapshotSequence);
+        long truncated = bytesBefore - Files.size(file);
+        if (truncated > 0) {
+            events.warn("store.log.truncated", "file", file, "bytes", truncated);
+        }
+        events.info("store.log.replayed", "records", records,
+                "ms", (System.nanoTime() - started) / 1_000_000);
+        return new JournaledUserRepository(replicated(store, replicationLog.getIfAvailable()), log, snapshotSequence);
+    }
+
+    /**
+     * Registered after startup replay, which followers never need since they are sent a copy.
+     */
+    private static UserRepository replicated(UserRepository store, ReplicationLog log) {
+        if (log != null) {
+            store.addWriteListener(log);
+        }
+        return store;
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnExpression(PERSISTENCE_ENABLED)
+    public SnapshotScheduler snapshotScheduler(
+            UserRepository users,
+            @Value("${demo.persistence.directory:data}") String directory,
+            @Value("${demo.persistence.snapshot-interval-ms:60000}") long intervalMillis,
+            @Value("${demo.persistence.snapshot-min-records:10000}") long minRecords,
+            EventLogger events) {
+        // Declared under the same condition as the log, so the store is always the journaled one here
+        return new SnapshotScheduler((JournaledUserRepository) users, Paths.get(directory, SNAPSHOT_FILE),
+                intervalMillis, minRecords, events);
+    }
+}
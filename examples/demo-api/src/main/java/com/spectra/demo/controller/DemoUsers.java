@@ -0,0 +1,21 @@
+package com.spectra.demo.controller;
+
+import com.spectra.demo.model.User;
+
+import java.util.List;
+
+/**
+ * Demo data for testing, seeded on startup and by reset-test-data
+ */
+final class DemoUsers {
+
+    private DemoUsers() {
+    }
+
+    static List<User> seed() {
+        return List.of(
+                new User(1L, "John Doe", "john.doe@example.com", 30, "Engineering"),
+                new User(2L, "Jane Smith", "jane.smith@example.com", 28, "Marketing"),
+                new User(3L, "Bob Johnson", "bob.johnson@example.com", 35, "Engineering"));
+    }
+}
@@ -0,0 +1,115 @@
+package com.spectra.demo.controller;
+
+import com.spectra.demo.replication.ReplicationRun;
+import com.spectra.demo.repository.UserRepository;
+
+/**
+ * Strong entity tags built from store versions
+ *
+ * Versions restart with an in-memory store, so every tag carries an epoch
+ * chosen at startup; a tag cached before a restart never matches afterwards.
+ * When user versions are replicated, user tags carry the leader's run
+ * instead, so a tag from one node is honoured by every other node; store
+ * versions differ between nodes and collection tags keep the local epoch.
+ */
+final class ETags {
+
+    /**
+     * Returned by expectedVersion when no tag in If-Match names a current version.
+     */
+    static final long NO_MATCH = -1;
+
+    private final String epoch;
+    private final ReplicationRun run;
+
+    ETags() {
+        this(null);
+    }
+
+    /**
+     * @param run leader run user versions come from, or null if they are this node's own
+     */
+    ETags(ReplicationRun run) {
+        this.epoch = Long.toString(System.currentTimeMillis(), 36);
+        this.run = run;
+    }
+
+    /**
+     * @return the tag for one user at the given user version
+     */
+    String forUser(long id, long version) {
+        return "\"" + userEpoch() + "-" + id + "." + version + "\"";
+    }
+
+    /**
+     * @return the tag for any collection view read at the given store version
+     */
+    String forCollection(long storeVersion) {
+        return "\"" + epoch + "-" + storeVersion + "\"";
+    }
+
+    /**
+     * @return the tag for the gzip-encoded variant of a representation, which
+     *         a strong tag must tell apart from the identity encoding
+     */
+    static String gzipVariant(String etag) {
+        return etag.substring(0, etag.length() - 1) + "-gzip\"";
+    }
+
+    /**
+     * Strong comparison, as If-Match requires: weak tags and tags from before
+     * a restart never match
+     * @param ifMatch header value: "*" or a comma-separated list of tags
+     * @return the user version named by the first tag issued for this user,
+     *         UserRepository.ANY_VERSION for "*", or NO_MATCH
+     */
+    long expectedVersion(String ifMatch, long id) {
+        String prefix = "\"" + userEpoch() + "-" + id + ".";
+        for (String candidate : ifMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*")) {
+                return UserRepository.ANY_VERSION;
+            }
+            if (tag.startsWith(prefix) && tag.endsWith("\"") && tag.length() > prefix.length() + 1) {
+                try {
+                    long version = Long.parseLong(tag.substring(prefix.length(), tag.length() - 1));
+                    // Stored versions start at 1; anything else was not issued by us
+                    if (version > 0) {
+                        return version;
+                    }
+                } catch (NumberFormatException e) {
+                    // Not one of ours after all; try the next tag
+                }
+            }
+        }
+        return NO_MATCH;
+    }
+
+    private String userEpoch() {
+        return run == null ? epoch : Long.toString(run.runId(), 36);
+    }
+
+    /**
+     * Weak comparison, as If-None-Match requires
+     * @param ifNoneMatch header value: "*" or a comma-separated list of tags, or null when absent
+     * @return true if the client's copy is current and a 304 can be sent
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*")) {
+                return true;
+            }
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,251 @@
+package com.spectra.demo.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.spectra.demo.model.User;
+import com.spectra.demo.persistence.Durability;
+import com.spectra.demo.repository.UserPage;
+import com.spectra.demo.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SynchronousSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import javax.validation.Valid;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * User REST Controller on Spring WebFlux, active with the reactive profile
+ *
+ * Serves the same /api/v1/users contract as UserController from Reactor
+ * Netty's event loops, so an idle keep-alive connection holds no thread.
+ * Responses come from the UserResponses both controllers share; this class
+ * only decides where they run. Memory and sharded store reads never block
+ * and stay on the event loop, but the offheap store's reads wait behind its
+ * writers, so with it reads move to Reactor's bounded elastic scheduler. So
+ * does the full listing, which may have to copy the whole table, and, with
+ * sync durability, every write, which waits for its log record to be
+ * fsynced. The unpaginated stream is pulled from the store one page at a
+ * time as the client reads it.
+ */
+@RestController
+@RequestMapping("/api/v1/users")
+@Validated
+@Profile("reactive")
+public class ReactiveUserController {
+
+    // Users per store read, and per buffer written, while streaming the whole table
+    static final int STREAM_PAGE_SIZE = 512;
+
+    private final UserResponses responses;
+    private final UserRepository users;
+    private final ObjectWriter userWriter;
+    private final Scheduler reads;
+    private final Scheduler writes;
+
+    public ReactiveUserController(UserResponses responses, UserRepository users, ObjectMapper objectMapper,
+                                  @Value("${demo.store.type:memory}") String storeType,
+                                  @Value("${demo.persistence.durability:none}") Durability durability) {
+        this.responses = responses;
+        this.users = users;
+        this.userWriter = objectMapper.writerFor(User.class);
+        this.reads = "offheap".equalsIgnoreCase(storeType) ? Schedulers.boundedElastic() : Schedulers.immediate();
+        this.writes = durability == Durability.SYNC ? Schedulers.boundedElastic() : Schedulers.immediate();
+    }
+
+    /**
+     * Get users one page at a time, ordered by ID
+     * @param limit Maximum number of users to return (1-1000)
+     * @param after Cursor from a previous page's X-Next-Cursor header; omitted for the first page
+     * @param all Return every user in a single unpaginated response
+     * @param ifNoneMatch ETag of a previously fetched copy of this page
+     * @param acceptEncoding Accept-Encoding header; gzip selects the compressed variant
+     * @return Page of users as JSON, with X-Next-Cursor set when more users follow, or 304 if unchanged
+     */
+    @GetMapping
+    public Mono<ResponseEntity<byte[]>> getAllUsers(@RequestParam(defaultValue = "" + UserResponses.DEFAULT_PAGE_SIZE) int limit,
+                                                    @RequestParam(required = false) Long after,
+                                                    @RequestParam(defaultValue = "false") boolean all,
+                                                    @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                                    @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        return Mono.fromSupplier(() -> responses.getAllUsers(limit, after, all, ifNoneMatch, acceptEncoding))
+                .subscribeOn(all ? Schedulers.boundedElastic() : reads);
+    }
+
+    /**
+     * Stream every user, reading the store only as fast as the client consumes
+     * @param accept Accept header; application/x-ndjson selects one JSON object per line
+     * @return JSON array or NDJSON stream of all users, one buffer per page of users
+     */
+    @GetMapping(params = "stream=true")
+    public ResponseEntity<Flux<DataBuffer>> streamAllUsers(
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        MediaType type = responses.streamType(accept);
+        boolean ndjson = type.equals(MediaType.APPLICATION_NDJSON);
+        return ResponseEntity.ok().contentType(type).body(Flux.defer(() -> streamUsers(ndjson)).subscribeOn(reads));
+    }
+
+    /**
+     * Get user by ID
+     * @param id User ID
+     * @param ifNoneMatch ETag of a previously fetched copy of this user
+     * @return User details as JSON, 304 if unchanged or 404 if not found
+     */
+    @GetMapping("/{id}")
+    public Mono<ResponseEntity<byte[]>> getUserById(@PathVariable Long id,
+                                                    @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return Mono.fromSupplier(() -> responses.getUserById(id, ifNoneMatch)).subscribeOn(reads);
+    }
+
+    /**
+     * Create a new user
+     * @param user User data
+     * @return Created user with generated ID
+     */
+    @PostMapping
+    public Mono<ResponseEntity<User>> createUser(@Valid @RequestBody User user) {
+        return Mono.fromSupplier(() -> responses.createUser(user)).subscribeOn(writes);
+    }
+
+    /**
+     * Update an existing user
+     * @param id User ID
+     * @param userUpdate Updated user data
+     * @param ifMatch ETag of the copy the update was made from; omitted for an unconditional update
+     * @return Updated user, 404 if not found or 412 if the user changed since that copy
+     */
+    @PutMapping("/{id}")
+    public Mono<ResponseEntity<User>> updateUser(@PathVariable Long id, @Valid @RequestBody User userUpdate,
+                                                 @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return Mono.fromSupplier(() -> responses.updateUser(id, userUpdate, ifMatch)).subscribeOn(writes);
+    }
+
+    /**
+     * Delete a user
+     * @param id User ID
+     * @return 204 No Content if successful, 404 if not found
+     */
+    @DeleteMapping("/{id}")
+    public Mono<ResponseEntity<Void>> deleteUser(@PathVariable Long id) {
+        return Mono.fromSupplier(() -> responses.deleteUser(id)).subscribeOn(writes);
+    }
+
+    /**
+     * Get users by department (demonstrates query parameters)
+     * @param department Department name
+     * @param ifNoneMatch ETag of a previously fetched copy of this list
+     * @param acceptEncoding Accept-Encoding header; gzip selects the compressed variant
+     * @return List of users in the department as JSON, or 304 if unchanged
+     */
+    @GetMapping("/department/{department}")
+    public Mono<ResponseEntity<byte[]>> getUsersByDepartment(@PathVariable String department,
+                                                             @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                                             @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        return Mono.fromSupplier(() -> responses.getUsersByDepartment(department, ifNoneMatch, acceptEncoding))
+                .subscribeOn(reads);
+    }
+
+    /**
+     * Reset demo data for testing (useful for test isolation)
+     * @return Reset confirmation
+     */
+    @PostMapping("/reset-test-data")
+    public Mono<ResponseEntity<Map<String, Object>>> resetTestData() {
+        return Mono.fromSupplier(responses::resetTestData).subscribeOn(writes);
+    }
+
+    /**
+     * Encode the users page by page, each page as one buffer. WebFlux's JSON
+     * encoder would collect a Flux of users into a list before writing an
+     * array, and flush after every user of an NDJSON stream.
+     */
+    private Flux<DataBuffer> streamUsers(boolean ndjson) {
+        // The first page starts after ID 0; an empty cursor means the last page has been read
+        Flux<List<User>> pages = Flux.generate(() -> Optional.of(0L), (Optional<Long> after, SynchronousSink<List<User>> sink) -> {
+            if (after.isEmpty()) {
+                sink.complete();
+                return after;
+            }
+            UserPage page = users.findPage(after.get(), STREAM_PAGE_SIZE);
+            sink.next(page.getUsers());
+            return Optional.ofNullable(page.getNextCursor());
+        });
+        if (ndjson) {
+            return pages.map(page -> encode(page, true, false));
+        }
+        boolean[] written = {false};
+        Flux<DataBuffer> elements = pages.filter(page -> !page.isEmpty()).map(page -> {
+            DataBuffer buffer = encode(page, false, written[0]);
+            written[0] = true;
+            return buffer;
+        });
+        return Flux.concat(Mono.fromSupplier(() -> wrap(new byte[] {'['})), elements,
+                Mono.fromSupplier(() -> wrap(new byte[] {']'})));
+    }
+
+    /**
+     * @param ndjson end every user with a newline rather than separating them with commas
+     * @param continued the array already has users, so a comma goes before the first one
+     */
+    private DataBuffer encode(List<User> page, boolean ndjson, boolean continued) {
+        ByteArrayBuilder bytes = new ByteArrayBuilder(page.size() * 128 + 1);
+        try (JsonGenerator generator = userWriter.getFactory().createGenerator(bytes)) {
+            generator.setRootValueSeparator(null);
+            for (int i = 0; i < page.size(); i++) {
+                if (!ndjson && (i > 0 || continued)) {
+                    generator.writeRaw(',');
+                }
+                userWriter.writeValue(generator, page.get(i));
+                if (ndjson) {
+                    generator.writeRaw('\n');
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return wrap(bytes.toByteArray());
+    }
+
+    private static DataBuffer wrap(byte[] bytes) {
+        return DefaultDataBufferFactory.sharedInstance.wrap(bytes);
+    }
+
+    /**
+     * Requests WebFlux rejected before the handler ran, e.g. a body failing
+     * validation, keep their status rather than reaching the handler below
+     */
+    @ExceptionHandler(ResponseStatusException.class)
+    public ResponseEntity<Map<String, String>> handleResponseStatusException(ResponseStatusException e) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", e.getStatus().getReasonPhrase());
+        error.put("message", e.getReason());
+
+        return ResponseEntity.status(e.getStatus()).body(error);
+    }
+
+    /**
+     * Global exception handler for demonstration
+     */
+    @ExceptionHandler(RuntimeException.class)
+    public ResponseEntity<Map<String, String>> handleRuntimeException(RuntimeException e) {
+        return responses.failed(e);
+    }
+}
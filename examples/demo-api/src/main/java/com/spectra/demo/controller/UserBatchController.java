@@ -0,0 +1,139 @@
+package com.spectra.demo.controller;
+
+import com.spectra.demo.cache.UserJsonCache;
+import com.spectra.demo.logging.EventLogger;
+import com.spectra.demo.metrics.UserMetrics;
+import com.spectra.demo.model.BatchOperation;
+import com.spectra.demo.model.BatchResult;
+import com.spectra.demo.model.User;
+import com.spectra.demo.repository.UserRepository;
+import com.spectra.demo.repository.WriteResult;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Batch writes for provisioning jobs
+ *
+ * Lives apart from UserController because the ":batch" suffix sits on the
+ * collection path itself, which a method mapping under /api/v1/users cannot
+ * express. Every operation keeps the semantics and status code of the
+ * matching single-user call; valid operations are applied together under one
+ * store lock and one log flush.
+ */
+@RestController
+@Profile("!reactive")
+@RequestMapping("/api/v1")
+public class UserBatchController {
+
+    static final int MAX_BATCH_SIZE = 1000;
+
+    private final UserRepository users;
+    private final EventLogger events;
+    private final Validator validator;
+    private final UserJsonCache jsonCache;
+    private final UserMetrics metrics;
+
+    public UserBatchController(UserRepository users, EventLogger events, Validator validator,
+                               UserJsonCache jsonCache, UserMetrics metrics) {
+        this.users = users;
+        this.events = events;
+        this.validator = validator;
+        this.jsonCache = jsonCache;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Apply create, update and delete operations in order
+     * @param operations Up to 1000 operations
+     * @return One result per operation, or 400 if the batch is empty or too large
+     */
+    @PostMapping("/users:batch")
+    public ResponseEntity<List<BatchResult>> applyBatch(@RequestBody List<BatchOperation> operations) {
+        if (operations.isEmpty() || operations.size() > MAX_BATCH_SIZE) {
+            events.info("users.batch.invalid_size", "size", operations.size());
+            return ResponseEntity.badRequest().build();
+        }
+
+        // Reject malformed operations up front; the rest go to the store as one batch
+        BatchResult[] results = new BatchResult[operations.size()];
+        List<BatchOperation> accepted = new ArrayList<>(operations.size());
+        List<Integer> acceptedIndexes = new ArrayList<>(operations.size());
+        for (int i = 0; i < operations.size(); i++) {
+            String error = validate(operations.get(i));
+            if (error != null) {
+                results[i] = new BatchResult(i, HttpStatus.BAD_REQUEST.value(), null, error);
+            } else {
+                accepted.add(operations.get(i));
+                acceptedIndexes.add(i);
+            }
+        }
+
+        List<WriteResult> outcomes = users.applyBatch(accepted);
+        int failed = operations.size() - accepted.size();
+        for (int i = 0; i < outcomes.size(); i++) {
+            int index = acceptedIndexes.get(i);
+            results[index] = toResult(index, accepted.get(i).getOp(), outcomes.get(i));
+            WriteResult.Status status = outcomes.get(i).getStatus();
+            if (status == WriteResult.Status.NOT_FOUND) {
+                metrics.notFound(UserMetrics.Operation.BATCH);
+            } else if (status == WriteResult.Status.DUPLICATE_EMAIL) {
+                metrics.duplicateEmail(UserMetrics.Operation.BATCH);
+            }
+            if (!outcomes.get(i).isOk()) {
+                failed++;
+            } else if (accepted.get(i).getOp() != BatchOperation.Type.CREATE) {
+                jsonCache.invalidate(accepted.get(i).getId());
+            }
+        }
+
+        events.info("users.batch", "count", operations.size(), "failed", failed);
+
+        return ResponseEntity.ok(Arrays.asList(results));
+    }
+
+    private String validate(BatchOperation operation) {
+        if (operation == null || operation.getOp() == null) {
+            return "Operation must be one of create, update or delete";
+        }
+        if (operation.getOp() != BatchOperation.Type.CREATE && operation.getId() == null) {
+            return "ID is required";
+        }
+        if (operation.getOp() == BatchOperation.Type.DELETE) {
+            return null;
+        }
+        User user = operation.getUser();
+        if (user == null) {
+            return "User is required";
+        }
+        Set<ConstraintViolation<User>> violations = validator.validate(user);
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return violations.stream()
+                .map(ConstraintViolation::getMessage)
+                .sorted()
+                .collect(Collectors.joining("; "));
+    }
+
+    private static BatchResult toResult(int index, BatchOperation.Type op, WriteResult outcome) {
+        switch (outcome.getStatus()) {
+            case NOT_FOUND:
+                return new BatchResult(index, HttpStatus.NOT_FOUND.value(), null, "User not found");
+            case DUPLICATE_EMAIL:
+                return new BatchResult(index, HttpStatus.BAD_REQUEST.value(), null, "Email already in use");
+            default:
+                if (op == BatchOperation.Type.DELETE) {
+                    return new BatchResult(index, HttpStatus.NO_CONTENT.value(), null, null);
+                }
+                HttpStatus status = op == BatchOperation.Type.CREATE ? HttpStatus.CREATED : HttpStatus.OK;
+                return new BatchResult(index, status.value(), outcome.getUser(), null);
+        }
+    }
+}
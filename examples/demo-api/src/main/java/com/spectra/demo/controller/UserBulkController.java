@@ -0,0 +1,93 @@
+package com.spectra.demo.controller;
+
+import com.spectra.demo.bulk.NdjsonUserImporter;
+import com.spectra.demo.bulk.UserExporter;
+import com.spectra.demo.logging.EventLogger;
+import com.spectra.demo.model.ImportSummary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Bulk data movement for seeding and copying environments
+ *
+ * Kept out of UserController so the per-user endpoints stay free of the
+ * streaming machinery these need.
+ */
+@RestController
+@Profile("!reactive")
+@RequestMapping("/api/v1/users")
+public class UserBulkController {
+
+    private final NdjsonUserImporter importer;
+    private final UserExporter exporter;
+    private final EventLogger events;
+
+    public UserBulkController(NdjsonUserImporter importer, UserExporter exporter, EventLogger events) {
+        this.importer = importer;
+        this.exporter = exporter;
+        this.events = events;
+    }
+
+    /**
+     * Import users from newline-delimited JSON, one user per line
+     * @param body Request body, read incrementally
+     * @return Counts of imported and rejected lines, with the first rejections
+     */
+    @PostMapping("/import")
+    public ResponseEntity<ImportSummary> importUsers(InputStream body) throws IOException {
+        return ResponseEntity.ok(importer.importUsers(body));
+    }
+
+    /**
+     * Export every user as a download
+     * @param format bin (snapshot format, see UserSnapshot) or ndjson
+     * @param compression none, gzip or deflate (fastest level)
+     * @return The user table, or 400 for an unknown format or compression
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportUsers(
+            @RequestParam(defaultValue = "bin") String format,
+            @RequestParam(defaultValue = "none") String compression) throws IOException {
+        UserExporter.Format exportFormat = UserExporter.parseFormat(format);
+        UserExporter.Compression exportCompression = UserExporter.parseCompression(compression);
+        if (exportFormat == null || exportCompression == null) {
+            events.info("users.export.invalid", "format", format, "compression", compression);
+            return ResponseEntity.badRequest().build();
+        }
+
+        UserExporter.Export export = exporter.export(exportFormat, exportCompression);
+        // Closed here unless the response body takes it over, which closes it once written
+        boolean handedOver = false;
+        try {
+            events.info("users.export", "format", exportFormat, "snapshot", export.isFromSnapshot());
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                    .contentType(MediaType.parseMediaType(export.getContentType()))
+                    .header(HttpHeaders.CONTENT_DISPOSITION,
+                            ContentDisposition.attachment().filename(export.getFilename()).build().toString());
+            if (export.getContentLength() >= 0) {
+                response.contentLength(export.getContentLength());
+            }
+            ResponseEntity<StreamingResponseBody> body = response.body(out -> {
+                try {
+                    export.writeTo(out);
+                } finally {
+                    export.close();
+                }
+            });
+            handedOver = true;
+            return body;
+        } finally {
+            if (!handedOver) {
+                export.close();
+            }
+        }
+    }
+}
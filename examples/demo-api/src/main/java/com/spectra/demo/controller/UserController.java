@@ -1,15 +1,24 @@
 package com.spectra.demo.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.spectra.demo.model.User;
-import org.springframework.http.HttpStatus;
+import com.spectra.demo.repository.UserRepository;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
-import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Map;
 
 /**
  * User REST Controller for Spectra Demo API
@@ -19,62 +28,70 @@ import java.util.concurrent.atomic.AtomicLong;
  * - Different HTTP methods (GET, POST, PUT, DELETE)
  * - Path parameters and request bodies
  * - Validation and error handling
- * - Multiple response codes (200, 201, 400, 404, 500)
+ * - Multiple response codes (200, 201, 304, 400, 404, 412, 500)
+ *
+ * Responses, including ETags and conditional requests, come from
+ * UserResponses, which ReactiveUserController shares; this controller binds
+ * them to the servlet stack.
  */
 @RestController
 @RequestMapping("/api/v1/users")
 @Validated
+@Profile("!reactive")
 public class UserController {
     
-    private final Map<Long, User> users = new ConcurrentHashMap<>();
-    private final AtomicLong counter = new AtomicLong(1);
+    private final UserResponses responses;
+    private final UserRepository users;
+    // Streaming writes go through one generator; flushing per user would defeat its buffer
+    private final ObjectWriter streamWriter;
     
-    public UserController() {
-        // Pre-populate with demo data
-        initializeDemoData();
+    public UserController(UserResponses responses, UserRepository users, ObjectMapper objectMapper) {
+        this.responses = responses;
+        this.users = users;
+        this.streamWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
     }
     
     /**
-     * Get all users
-     * @return List of all users
+     * Get users one page at a time, ordered by ID
+     * @param limit Maximum number of users to return (1-1000)
+     * @param after Cursor from a previous page's X-Next-Cursor header; omitted for the first page
+     * @param all Return every user in a single unpaginated response
+     * @param ifNoneMatch ETag of a previously fetched copy of this page
+     * @param acceptEncoding Accept-Encoding header; gzip selects the compressed variant
+     * @return Page of users as JSON, with X-Next-Cursor set when more users follow, or 304 if unchanged
      */
     @GetMapping
-    public ResponseEntity<List<User>> getAllUsers() {
-        System.out.println("🔍 [DEMO-API] GET /api/v1/users - Request received");
-        System.out.println("🔍 [DEMO-API] Current users in database: " + users.size());
-        
-        List<User> userList = new ArrayList<>(users.values());
-        System.out.println("🔍 [DEMO-API] Returning " + userList.size() + " users");
-        System.out.println("✅ [DEMO-API] GET /api/v1/users - Success (200)");
-        
-        return ResponseEntity.ok(userList);
+    public ResponseEntity<byte[]> getAllUsers(@RequestParam(defaultValue = "" + UserResponses.DEFAULT_PAGE_SIZE) int limit,
+                                              @RequestParam(required = false) Long after,
+                                              @RequestParam(defaultValue = "false") boolean all,
+                                              @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                              @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        return responses.getAllUsers(limit, after, all, ifNoneMatch, acceptEncoding);
+    }
+    
+    /**
+     * Stream every user straight to the response while iterating the store
+     * @param accept Accept header; application/x-ndjson selects one JSON object per line
+     * @return JSON array or NDJSON stream of all users, written without buffering the list
+     */
+    @GetMapping(params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> streamAllUsers(
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        MediaType type = responses.streamType(accept);
+        boolean ndjson = type.equals(MediaType.APPLICATION_NDJSON);
+        return ResponseEntity.ok().contentType(type).body(out -> writeUsers(out, ndjson));
     }
     
     /**
      * Get user by ID
      * @param id User ID
-     * @return User details or 404 if not found
+     * @param ifNoneMatch ETag of a previously fetched copy of this user
+     * @return User details as JSON, 304 if unchanged or 404 if not found
      */
     @GetMapping("/{id}")
-    public ResponseEntity<User> getUserById(@PathVariable Long id) {
-        System.out.println("🔍 [DEMO-API] GET /api/v1/users/" + id + " - Request received");
-        System.out.println("🔍 [DEMO-API] Path variable 'id' = " + id + " (type: " + id.getClass().getSimpleName() + ")");
-        System.out.println("🔍 [DEMO-API] Available user IDs: " + users.keySet());
-        
-        // Simulate server error for ID 999 (for error testing)
-        if (id == 999) {
-            System.out.println("❌ [DEMO-API] Simulating server error for ID 999");
-            throw new RuntimeException("Simulated server error for testing");
-        }
-        
-        User user = users.get(id);
-        if (user == null) {
-            System.out.println("❌ [DEMO-API] User with ID " + id + " not found - Returning 404");
-            return ResponseEntity.notFound().build();
-        }
-        
-        System.out.println("✅ [DEMO-API] User found: " + user.getName() + " - Returning 200");
-        return ResponseEntity.ok(user);
+    public ResponseEntity<byte[]> getUserById(@PathVariable Long id,
+                                            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return responses.getUserById(id, ifNoneMatch);
     }
     
     /**
@@ -84,68 +101,20 @@ public class UserController {
      */
     @PostMapping
     public ResponseEntity<User> createUser(@Valid @RequestBody User user) {
-        System.out.println("🔍 [DEMO-API] POST /api/v1/users - Request received");
-        System.out.println("🔍 [DEMO-API] Request body: " + user);
-        System.out.println("🔍 [DEMO-API] User data - Name: " + user.getName() + ", Email: " + user.getEmail() + ", Age: " + user.getAge());
-        
-        // Check for duplicate email
-        boolean emailExists = users.values().stream()
-                .anyMatch(existingUser -> existingUser.getEmail().equals(user.getEmail()));
-        
-        if (emailExists) {
-            System.out.println("❌ [DEMO-API] Duplicate email detected: " + user.getEmail() + " - Returning 400");
-            return ResponseEntity.badRequest().build();
-        }
-        
-        // Generate ID and save
-        Long id = counter.getAndIncrement();
-        user.setId(id);
-        users.put(id, user);
-        
-        System.out.println("✅ [DEMO-API] User created successfully with ID: " + id + " - Returning 201");
-        System.out.println("🔍 [DEMO-API] Total users now: " + users.size());
-        
-        return ResponseEntity.status(HttpStatus.CREATED).body(user);
+        return responses.createUser(user);
     }
     
     /**
      * Update an existing user
      * @param id User ID
      * @param userUpdate Updated user data
-     * @return Updated user or 404 if not found
+     * @param ifMatch ETag of the copy the update was made from; omitted for an unconditional update
+     * @return Updated user, 404 if not found or 412 if the user changed since that copy
      */
     @PutMapping("/{id}")
-    public ResponseEntity<User> updateUser(@PathVariable Long id, @Valid @RequestBody User userUpdate) {
-        System.out.println("🔍 [DEMO-API] PUT /api/v1/users/" + id + " - Request received");
-        System.out.println("🔍 [DEMO-API] Path variable 'id' = " + id + " (type: " + id.getClass().getSimpleName() + ")");
-        System.out.println("🔍 [DEMO-API] Request body: " + userUpdate);
-        System.out.println("🔍 [DEMO-API] Available user IDs: " + users.keySet());
-        
-        User existingUser = users.get(id);
-        if (existingUser == null) {
-            System.out.println("❌ [DEMO-API] User with ID " + id + " not found - Returning 404");
-            return ResponseEntity.notFound().build();
-        }
-        
-        System.out.println("🔍 [DEMO-API] Existing user: " + existingUser.getName());
-        
-        // Check for duplicate email (excluding current user)
-        boolean emailExists = users.values().stream()
-                .anyMatch(user -> !user.getId().equals(id) && 
-                         user.getEmail().equals(userUpdate.getEmail()));
-        
-        if (emailExists) {
-            System.out.println("❌ [DEMO-API] Duplicate email detected: " + userUpdate.getEmail() + " - Returning 400");
-            return ResponseEntity.badRequest().build();
-        }
-        
-        // Update user
-        userUpdate.setId(id);
-        users.put(id, userUpdate);
-        
-        System.out.println("✅ [DEMO-API] User updated successfully - Name: " + userUpdate.getName() + " - Returning 200");
-        
-        return ResponseEntity.ok(userUpdate);
+    public ResponseEntity<User> updateUser(@PathVariable Long id, @Valid @RequestBody User userUpdate,
+                                           @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return responses.updateUser(id, userUpdate, ifMatch);
     }
     
     /**
@@ -155,40 +124,21 @@ public class UserController {
      */
     @DeleteMapping("/{id}")
     public ResponseEntity<Void> deleteUser(@PathVariable Long id) {
-        System.out.println("🔍 [DEMO-API] DELETE /api/v1/users/" + id + " - Request received");
-        System.out.println("🔍 [DEMO-API] Path variable 'id' = " + id + " (type: " + id.getClass().getSimpleName() + ")");
-        System.out.println("🔍 [DEMO-API] Available user IDs before deletion: " + users.keySet());
-        
-        User removedUser = users.remove(id);
-        if (removedUser == null) {
-            System.out.println("❌ [DEMO-API] User with ID " + id + " not found - Returning 404");
-            return ResponseEntity.notFound().build();
-        }
-        
-        System.out.println("✅ [DEMO-API] User " + removedUser.getName() + " (ID: " + id + ") deleted successfully - Returning 204");
-        System.out.println("🔍 [DEMO-API] Remaining users: " + users.size());
-        
-        return ResponseEntity.noContent().build();
+        return responses.deleteUser(id);
     }
     
     /**
      * Get users by department (demonstrates query parameters)
      * @param department Department name
-     * @return List of users in the department
+     * @param ifNoneMatch ETag of a previously fetched copy of this list
+     * @param acceptEncoding Accept-Encoding header; gzip selects the compressed variant
+     * @return List of users in the department as JSON, or 304 if unchanged
      */
     @GetMapping("/department/{department}")
-    public ResponseEntity<List<User>> getUsersByDepartment(@PathVariable String department) {
-        System.out.println("🔍 [DEMO-API] GET /api/v1/users/department/" + department + " - Request received");
-        System.out.println("🔍 [DEMO-API] Department parameter: '" + department + "'");
-        System.out.println("🔍 [DEMO-API] Available departments: " + users.values().stream().map(User::getDepartment).distinct().toList());
-        
-        List<User> departmentUsers = users.values().stream()
-                .filter(user -> department.equalsIgnoreCase(user.getDepartment()))
-                .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
-        
-        System.out.println("✅ [DEMO-API] Found " + departmentUsers.size() + " users in department '" + department + "' - Returning 200");
-        
-        return ResponseEntity.ok(departmentUsers);
+    public ResponseEntity<byte[]> getUsersByDepartment(@PathVariable String department,
+                                                       @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                                       @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        return responses.getUsersByDepartment(department, ifNoneMatch, acceptEncoding);
     }
     
     /**
@@ -197,29 +147,32 @@ public class UserController {
      */
     @PostMapping("/reset-test-data")
     public ResponseEntity<Map<String, Object>> resetTestData() {
-        System.out.println("🔄 [DEMO-API] RESET TEST DATA - Request received");
-        
-        users.clear();
-        initializeDemoData();
-        
-        Map<String, Object> response = new HashMap<>();
-        response.put("message", "Test data reset successfully");
-        response.put("userCount", users.size());
-        response.put("availableIds", users.keySet());
-        
-        System.out.println("✅ [DEMO-API] Test data reset completed - Users: " + users.keySet());
-        
-        return ResponseEntity.ok(response);
+        return responses.resetTestData();
     }
-
-    /**
-     * Initialize demo data for testing
-     */
-    private void initializeDemoData() {
-        users.put(1L, new User(1L, "John Doe", "john.doe@example.com", 30, "Engineering"));
-        users.put(2L, new User(2L, "Jane Smith", "jane.smith@example.com", 28, "Marketing"));
-        users.put(3L, new User(3L, "Bob Johnson", "bob.johnson@example.com", 35, "Engineering"));
-        counter.set(4L);
+    
+    private void writeUsers(OutputStream out, boolean ndjson) throws IOException {
+        try (JsonGenerator generator = streamWriter.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+            if (!ndjson) {
+                generator.writeStartArray();
+            }
+            users.forEach(user -> {
+                try {
+                    streamWriter.writeValue(generator, user);
+                    if (ndjson) {
+                        generator.writeRaw('\n');
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            if (!ndjson) {
+                generator.writeEndArray();
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
     }
     
     /**
@@ -227,15 +180,6 @@ public class UserController {
      */
     @ExceptionHandler(RuntimeException.class)
     public ResponseEntity<Map<String, String>> handleRuntimeException(RuntimeException e) {
-        System.out.println("❌ [DEMO-API] Exception occurred: " + e.getMessage());
-        System.out.println("❌ [DEMO-API] Exception type: " + e.getClass().getSimpleName());
-        
-        Map<String, String> error = new HashMap<>();
-        error.put("error", "Internal Server Error");
-        error.put("message", e.getMessage());
-        
-        System.out.println("❌ [DEMO-API] Returning 500 with error: " + error);
-        
-        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
+        return responses.failed(e);
     }
 } 
\ No newline at end of file
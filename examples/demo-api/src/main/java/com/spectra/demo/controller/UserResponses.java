@@ -0,0 +1,286 @@
+package com.spectra.demo.controller;
+
+import com.spectra.demo.cache.UserJsonCache;
+import com.spectra.demo.cache.UserListCache;
+import com.spectra.demo.logging.EventLogger;
+import com.spectra.demo.metrics.UserMetrics;
+import com.spectra.demo.metrics.UserMetrics.Operation;
+import com.spectra.demo.model.User;
+import com.spectra.demo.replication.ReplicationRun;
+import com.spectra.demo.repository.UserPage;
+import com.spectra.demo.repository.UserRepository;
+import com.spectra.demo.repository.WriteResult;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The /api/v1/users contract, shared by UserController and ReactiveUserController
+ *
+ * Each method takes a request's parameters and headers and returns the whole
+ * response, so the controllers only adapt it to their web stack. Methods run
+ * on the calling thread and block for as long as the store does.
+ *
+ * Reads carry a strong ETag; a request whose If-None-Match still matches
+ * gets a bodiless 304 before any list is built or anything is serialized.
+ * An update sent with If-Match is applied only if the user is still at the
+ * tagged version, checked atomically by the store, so a lost race answers
+ * 412 at once instead of overwriting the winner. Single users and listings
+ * are written from pre-encoded bytes kept by UserJsonCache and UserListCache.
+ */
+@Component
+public class UserResponses {
+
+    static final int DEFAULT_PAGE_SIZE = 100;
+    static final int MAX_PAGE_SIZE = 1000;
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private final UserRepository users;
+    private final EventLogger events;
+    private final UserMetrics metrics;
+    private final UserJsonCache jsonCache;
+    private final UserListCache listCache;
+    private final ETags etags;
+
+    /**
+     * @param replication the leader run user versions come from on a replicated node, otherwise null
+     */
+    public UserResponses(UserRepository users, EventLogger events, UserMetrics metrics,
+                         UserJsonCache jsonCache, UserListCache listCache, @Nullable ReplicationRun replication) {
+        this.users = users;
+        this.events = events;
+        this.metrics = metrics;
+        this.jsonCache = jsonCache;
+        this.listCache = listCache;
+        this.etags = new ETags(replication);
+        // Pre-populate with demo data, unless users were restored from the mutation log
+        if (users.count() == 0) {
+            users.reset(DemoUsers.seed());
+        }
+    }
+
+    /**
+     * @return a page of users, every user when all is set, or 304 if the client's copy is current
+     */
+    public ResponseEntity<byte[]> getAllUsers(int limit, Long after, boolean all, String ifNoneMatch, String acceptEncoding) {
+        if (!all && (limit < 1 || limit > MAX_PAGE_SIZE)) {
+            events.info("users.list.invalid_limit", "limit", limit);
+            return ResponseEntity.badRequest().build();
+        }
+
+        // Read before the users, so a write racing the read can only make the tag older than the body
+        long version = users.version();
+        boolean gzip = listCache.shouldGzip(acceptEncoding);
+        String etag = listingETag(version, gzip);
+        if (ETags.matches(ifNoneMatch, etag)) {
+            events.debug("users.list.not_modified", "all", all);
+            return listingNotModified(etag);
+        }
+
+        String key = all ? UserListCache.allKey() : UserListCache.pageKey(after, limit);
+        UserListCache.Listing listing = listCache.listing(key, version,
+                () -> all ? new UserPage(users.findAll(), null) : users.findPage(after, limit));
+        events.debug("users.list", "count", listing.getCount());
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (listing.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, listing.getNextCursor().toString());
+        }
+        return listingResponse(response, key, listing, etag, gzip);
+    }
+
+    /**
+     * @return the media type a stream of every user is written in, given the request's Accept header
+     */
+    public MediaType streamType(String accept) {
+        boolean ndjson = accept != null && MediaType.parseMediaTypes(accept).stream()
+                .anyMatch(MediaType.APPLICATION_NDJSON::equalsTypeAndSubtype);
+        events.debug("users.stream", "ndjson", ndjson);
+        return ndjson ? MediaType.APPLICATION_NDJSON : MediaType.APPLICATION_JSON;
+    }
+
+    /**
+     * @return the user as JSON, 304 if the client's copy is current or 404 if there is none
+     */
+    public ResponseEntity<byte[]> getUserById(long id, String ifNoneMatch) {
+        // Simulate server error for ID 999 (for error testing)
+        if (id == 999) {
+            events.warn("users.get.simulated_error", "id", id);
+            throw new RuntimeException("Simulated server error for testing");
+        }
+
+        Optional<User> user = users.findById(id);
+        if (user.isEmpty()) {
+            events.info("users.get.not_found", "id", id);
+            metrics.notFound(Operation.GET);
+            return ResponseEntity.notFound().build();
+        }
+
+        String etag = etags.forUser(id, user.get().getVersion());
+        if (ETags.matches(ifNoneMatch, etag)) {
+            events.debug("users.get.not_modified", "id", id);
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+
+        events.debug("users.get", "id", id);
+        return ResponseEntity.ok().eTag(etag).contentType(MediaType.APPLICATION_JSON).body(jsonCache.json(user.get()));
+    }
+
+    /**
+     * @return the created user with its generated ID, or 400 if the email is taken
+     */
+    public ResponseEntity<User> createUser(User user) {
+        WriteResult result = users.create(user);
+        if (!result.isOk()) {
+            events.info("users.create.duplicate_email", "email", user.getEmail());
+            metrics.duplicateEmail(Operation.CREATE);
+            return ResponseEntity.badRequest().build();
+        }
+
+        events.info("users.created", "id", user.getId());
+
+        User created = result.getUser();
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .eTag(etags.forUser(created.getId(), created.getVersion())).body(created);
+    }
+
+    /**
+     * @param ifMatch ETag of the copy the update was made from; null for an unconditional update
+     * @return the updated user, 404 if not found or 412 if the user changed since that copy
+     */
+    public ResponseEntity<User> updateUser(long id, User userUpdate, String ifMatch) {
+        long expectedVersion = ifMatch == null ? UserRepository.ANY_VERSION : etags.expectedVersion(ifMatch, id);
+        if (expectedVersion == ETags.NO_MATCH) {
+            events.info("users.update.precondition_failed", "id", id);
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+        }
+
+        WriteResult result = users.update(id, userUpdate, expectedVersion);
+
+        if (result.getStatus() == WriteResult.Status.NOT_FOUND) {
+            events.info("users.update.not_found", "id", id);
+            metrics.notFound(Operation.UPDATE);
+            // A precondition on a missing user cannot hold, even "*"
+            return ifMatch == null ? ResponseEntity.notFound().build()
+                    : ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+        }
+
+        if (result.getStatus() == WriteResult.Status.VERSION_CONFLICT) {
+            User current = result.getUser();
+            events.info("users.update.version_conflict", "id", id, "version", current.getVersion());
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED)
+                    .eTag(etags.forUser(id, current.getVersion())).build();
+        }
+
+        if (result.getStatus() == WriteResult.Status.DUPLICATE_EMAIL) {
+            events.info("users.update.duplicate_email", "id", id, "email", userUpdate.getEmail());
+            metrics.duplicateEmail(Operation.UPDATE);
+            return ResponseEntity.badRequest().build();
+        }
+
+        jsonCache.invalidate(id);
+        events.info("users.updated", "id", id);
+
+        User updated = result.getUser();
+        return ResponseEntity.ok().eTag(etags.forUser(id, updated.getVersion())).body(updated);
+    }
+
+    /**
+     * @return 204 No Content if the user was deleted, 404 if not found
+     */
+    public ResponseEntity<Void> deleteUser(long id) {
+        if (!users.delete(id).isOk()) {
+            events.info("users.delete.not_found", "id", id);
+            metrics.notFound(Operation.DELETE);
+            return ResponseEntity.notFound().build();
+        }
+
+        jsonCache.invalidate(id);
+        events.info("users.deleted", "id", id);
+
+        return ResponseEntity.noContent().build();
+    }
+
+    /**
+     * @return the users in the department as JSON, or 304 if the client's copy is current
+     */
+    public ResponseEntity<byte[]> getUsersByDepartment(String department, String ifNoneMatch, String acceptEncoding) {
+        // Only writes to this department move its version, so other departments' writes keep it cached
+        long version = users.departmentVersion(department);
+        boolean gzip = listCache.shouldGzip(acceptEncoding);
+        String etag = listingETag(version, gzip);
+        if (ETags.matches(ifNoneMatch, etag)) {
+            events.debug("users.department.not_modified", "department", department);
+            return listingNotModified(etag);
+        }
+
+        String key = UserListCache.departmentKey(department);
+        UserListCache.Listing listing = listCache.listing(key, version,
+                () -> new UserPage(users.findByDepartment(department), null));
+
+        events.debug("users.department", "department", department, "count", listing.getCount());
+
+        return listingResponse(ResponseEntity.ok(), key, listing, etag, gzip);
+    }
+
+    /**
+     * Replace every user with the demo data
+     */
+    public ResponseEntity<Map<String, Object>> resetTestData() {
+        List<User> seed = DemoUsers.seed();
+        users.reset(seed);
+        jsonCache.invalidateAll();
+
+        List<Long> availableIds = new ArrayList<>(seed.size());
+        seed.forEach(user -> availableIds.add(user.getId()));
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("message", "Test data reset successfully");
+        response.put("userCount", users.count());
+        response.put("availableIds", availableIds);
+
+        events.info("users.reset", "count", seed.size());
+
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * @return the 500 answered for a request that failed unexpectedly
+     */
+    public ResponseEntity<Map<String, String>> failed(RuntimeException e) {
+        events.error("request.failed", "type", e.getClass().getSimpleName(), "message", e.getMessage());
+
+        Map<String, String> error = new HashMap<>();
+        error.put("error", "Internal Server Error");
+        error.put("message", e.getMessage());
+
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
+    }
+
+    private static <T> ResponseEntity<T> listingNotModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).varyBy(HttpHeaders.ACCEPT_ENCODING).build();
+    }
+
+    private String listingETag(long version, boolean gzip) {
+        String etag = etags.forCollection(version);
+        return gzip ? ETags.gzipVariant(etag) : etag;
+    }
+
+    private ResponseEntity<byte[]> listingResponse(ResponseEntity.BodyBuilder response, String key,
+                                                   UserListCache.Listing listing, String etag, boolean gzip) {
+        response.eTag(etag).contentType(MediaType.APPLICATION_JSON).varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(listCache.gzipped(key, listing));
+        }
+        return response.body(listing.getJson());
+    }
+}
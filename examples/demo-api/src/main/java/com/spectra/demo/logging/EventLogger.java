@@ -0,0 +1,239 @@
+package com.spectra.demo.logging;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Non-blocking structured event logger for the demo API
+ *
+ * Request threads publish small key/value events into a bounded ring buffer
+ * and never wait on I/O; a single background thread formats the events and
+ * hands them to SLF4J. Events below the configured level are discarded before
+ * any object is created, and events that arrive while the buffer is full are
+ * dropped and counted instead of blocking the caller.
+ */
+@Component
+public class EventLogger {
+
+    public enum Level { DEBUG, INFO, WARN, ERROR, OFF }
+
+    private static final Logger log = LoggerFactory.getLogger("com.spectra.demo.events");
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Level threshold;
+    private final AtomicReferenceArray<Event> ring;
+    private final int mask;
+    // Producers claim slots by advancing tail; only the flusher advances head
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private long reportedDropped;
+
+    private volatile boolean running;
+    private Thread flusher;
+
+    public EventLogger(@Value("${demo.events.level:INFO}") Level threshold,
+                       @Value("${demo.events.buffer-size:8192}") int bufferSize) {
+        int capacity = Integer.highestOneBit(Math.max(2, bufferSize - 1)) << 1;
+        this.threshold = threshold;
+        this.ring = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        flusher = new Thread(this::flushLoop, "demo-event-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (flusher != null) {
+            LockSupport.unpark(flusher);
+            flusher.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    public boolean isEnabled(Level level) {
+        return level.compareTo(threshold) >= 0 && level != Level.OFF;
+    }
+
+    /**
+     * @return number of events discarded because the ring buffer was full
+     */
+    public long droppedEvents() {
+        return dropped.get();
+    }
+
+    public void debug(String event) {
+        publish(Level.DEBUG, event, null, null, null, null);
+    }
+
+    public void debug(String event, String key, Object value) {
+        publish(Level.DEBUG, event, key, value, null, null);
+    }
+
+    public void debug(String event, String key1, Object value1, String key2, Object value2) {
+        publish(Level.DEBUG, event, key1, value1, key2, value2);
+    }
+
+    // Primitive overloads only box once the level is known to be enabled
+    public void debug(String event, String key, long value) {
+        if (isEnabled(Level.DEBUG)) {
+            publish(Level.DEBUG, event, key, value, null, null);
+        }
+    }
+
+    public void debug(String event, String key1, Object value1, String key2, long value2) {
+        if (isEnabled(Level.DEBUG)) {
+            publish(Level.DEBUG, event, key1, value1, key2, value2);
+        }
+    }
+
+    public void info(String event) {
+        publish(Level.INFO, event, null, null, null, null);
+    }
+
+    public void info(String event, String key, Object value) {
+        publish(Level.INFO, event, key, value, null, null);
+    }
+
+    public void info(String event, String key1, Object value1, String key2, Object value2) {
+        publish(Level.INFO, event, key1, value1, key2, value2);
+    }
+
+    public void warn(String event, String key, Object value) {
+        publish(Level.WARN, event, key, value, null, null);
+    }
+
+    public void warn(String event, String key1, Object value1, String key2, Object value2) {
+        publish(Level.WARN, event, key1, value1, key2, value2);
+    }
+
+    public void error(String event, String key, Object value) {
+        publish(Level.ERROR, event, key, value, null, null);
+    }
+
+    public void error(String event, String key1, Object value1, String key2, Object value2) {
+        publish(Level.ERROR, event, key1, value1, key2, value2);
+    }
+
+    private void publish(Level level, String name, String key1, Object value1, String key2, Object value2) {
+        if (!isEnabled(level)) {
+            return;
+        }
+        long slot;
+        do {
+            slot = tail.get();
+            if (slot - head.get() > mask) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!tail.compareAndSet(slot, slot + 1));
+
+        ring.lazySet((int) slot & mask, new Event(level, name, Thread.currentThread().getName(),
+                System.currentTimeMillis(), key1, value1, key2, value2));
+    }
+
+    private void flushLoop() {
+        StringBuilder line = new StringBuilder(128);
+        while (running || head.get() != tail.get()) {
+            if (!drain(line)) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Write out every event that has been published so far.
+     * @return false if there was nothing to flush
+     */
+    private boolean drain(StringBuilder line) {
+        long position = head.get();
+        boolean flushed = false;
+        while (position != tail.get()) {
+            int index = (int) position & mask;
+            Event event = ring.get(index);
+            if (event == null) {
+                // Slot claimed but not yet published by its producer
+                break;
+            }
+            ring.lazySet(index, null);
+            head.lazySet(++position);
+            write(event, line);
+            flushed = true;
+        }
+        long droppedNow = dropped.get();
+        if (droppedNow != reportedDropped) {
+            log.warn("events.dropped total={}", droppedNow);
+            reportedDropped = droppedNow;
+        }
+        return flushed;
+    }
+
+    private static void write(Event event, StringBuilder line) {
+        line.setLength(0);
+        line.append(event.name);
+        appendField(line, event.key1, event.value1);
+        appendField(line, event.key2, event.value2);
+        line.append(" thread=").append(event.thread)
+                .append(" at=").append(Instant.ofEpochMilli(event.timestamp));
+        String message = line.toString();
+
+        switch (event.level) {
+            case DEBUG:
+                log.debug(message);
+                break;
+            case INFO:
+                log.info(message);
+                break;
+            case WARN:
+                log.warn(message);
+                break;
+            default:
+                log.error(message);
+        }
+    }
+
+    private static void appendField(StringBuilder line, String key, Object value) {
+        if (key != null) {
+            line.append(' ').append(key).append('=').append(value);
+        }
+    }
+
+    private static final class Event {
+        final Level level;
+        final String name;
+        final String thread;
+        final long timestamp;
+        final String key1;
+        final Object value1;
+        final String key2;
+        final Object value2;
+
+        Event(Level level, String name, String thread, long timestamp,
+              String key1, Object value1, String key2, Object value2) {
+            this.level = level;
+            this.name = name;
+            this.thread = thread;
+            this.timestamp = timestamp;
+            this.key1 = key1;
+            this.value1 = value1;
+            this.key2 = key2;
+            this.value2 = value2;
+        }
+    }
+}
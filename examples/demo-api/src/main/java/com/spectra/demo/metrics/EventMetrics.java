@@ -0,0 +1,28 @@
+package com.spectra.demo.metrics;
+
+import com.spectra.demo.logging.EventLogger;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+/**
+ * Counter of structured events the EventLogger had to drop, read only when
+ * metrics are scraped, so a full ring buffer shows up before logs go missing
+ */
+@Component
+public class EventMetrics implements MeterBinder {
+
+    private final EventLogger events;
+
+    public EventMetrics(EventLogger events) {
+        this.events = events;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry meters) {
+        FunctionCounter.builder("events.dropped", events, EventLogger::droppedEvents)
+                .description("Events discarded because the event buffer was full")
+                .register(meters);
+    }
+}
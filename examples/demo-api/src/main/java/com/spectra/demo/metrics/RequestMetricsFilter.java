@@ -0,0 +1,125 @@
+package com.spectra.demo.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.boot.actuate.metrics.http.Outcome;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Times every request handled by a controller method as http.server.requests
+ *
+ * Same meter name and tag keys as Spring Boot's own request timing, which is
+ * switched off in application.yml because it builds a tag list per request.
+ * Here each handler method resolves to an endpoint once, and each endpoint
+ * keeps its timers in an array indexed by status code, so after the first
+ * request per endpoint and status recording allocates nothing. Timers publish
+ * a percentile histogram (Prometheus buckets) plus p50/p95/p99.
+ *
+ * A plain Filter rather than OncePerRequestFilter, whose guard attribute name
+ * is concatenated on every call; Spring Boot maps filter beans to REQUEST
+ * dispatches only, so each request passes here once anyway. Streaming
+ * responses are timed until the handler returns, not until the last byte is
+ * written.
+ */
+@Component
+@Profile("!reactive")
+public class RequestMetricsFilter implements Filter {
+
+    static final String METRIC = "http.server.requests";
+    private static final String NO_EXCEPTION = "None";
+    private static final int MAX_STATUS = 600;
+
+    private final MeterRegistry meters;
+    // Keyed by the reflective Method, which Spring shares across the per-request HandlerMethod copies
+    private final Map<Method, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    public RequestMetricsFilter(MeterRegistry meters) {
+        this.meters = meters;
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long started = System.nanoTime();
+        try {
+            chain.doFilter(request, response);
+        } catch (Throwable e) {
+            record((HttpServletRequest) request, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e, started);
+            throw e;
+        }
+        record((HttpServletRequest) request, ((HttpServletResponse) response).getStatus(), null, started);
+    }
+
+    private void record(HttpServletRequest request, int status, Throwable error, long started) {
+        long elapsed = System.nanoTime() - started;
+        Object handler = request.getAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE);
+        if (!(handler instanceof HandlerMethod)) {
+            return;
+        }
+        Method method = ((HandlerMethod) handler).getMethod();
+        Endpoint endpoint = endpoints.get(method);
+        if (endpoint == null) {
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            String uri = pattern != null ? pattern.toString() : "UNKNOWN";
+            endpoint = endpoints.computeIfAbsent(method, key -> new Endpoint(uri, request.getMethod()));
+        }
+        Timer timer = error == null ? endpoint.timer(status) : timer(endpoint, status, error.getClass().getSimpleName());
+        timer.record(elapsed, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer timer(Endpoint endpoint, int status, String exception) {
+        return Timer.builder(METRIC)
+                .tags("exception", exception,
+                        "method", endpoint.method,
+                        "outcome", Outcome.forStatus(status).name(),
+                        "status", Integer.toString(status),
+                        "uri", endpoint.uri)
+                .publishPercentileHistogram()
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .minimumExpectedValue(Duration.ofNanos(100_000))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(meters);
+    }
+
+    private final class Endpoint {
+        final String uri;
+        final String method;
+        final AtomicReferenceArray<Timer> byStatus = new AtomicReferenceArray<>(MAX_STATUS);
+
+        Endpoint(String uri, String method) {
+            this.uri = uri;
+            this.method = method;
+        }
+
+        Timer timer(int status) {
+            if (status < 0 || status >= MAX_STATUS) {
+                return RequestMetricsFilter.this.timer(this, status, NO_EXCEPTION);
+            }
+            Timer timer = byStatus.get(status);
+            if (timer == null) {
+                // The registry returns the same timer to racing builders
+                timer = RequestMetricsFilter.this.timer(this, status, NO_EXCEPTION);
+                byStatus.set(status, timer);
+            }
+            return timer;
+        }
+    }
+}
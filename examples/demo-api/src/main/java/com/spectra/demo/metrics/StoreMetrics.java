@@ -0,0 +1,36 @@
+package com.spectra.demo.metrics;
+
+import com.spectra.demo.repository.UserRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Gauges for the size of the user store and of its secondary structures,
+ * read only when metrics are scraped
+ */
+@Component
+public class StoreMetrics implements MeterBinder {
+
+    private final UserRepository users;
+
+    public StoreMetrics(UserRepository users) {
+        this.users = users;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry meters) {
+        Gauge.builder("users.stored", users, UserRepository::count)
+                .description("Users in the store")
+                .register(meters);
+        users.indexSizes((index, size) -> Gauge.builder("users.index.size", size, LongSupplier::getAsLong)
+                .description("Entries in a secondary structure of the store")
+                .tag("index", index)
+                // The supplier is only referenced from here; a weak gauge would lose it to the next GC
+                .strongReference(true)
+                .register(meters));
+    }
+}
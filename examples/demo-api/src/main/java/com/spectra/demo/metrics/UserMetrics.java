@@ -0,0 +1,55 @@
+package com.spectra.demo.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumSet;
+import java.util.Locale;
+
+/**
+ * Counters for rejected user writes and lookups
+ *
+ * Counters are registered up front and kept in arrays indexed by operation,
+ * so counting on a request path is a single increment.
+ */
+@Component
+public class UserMetrics {
+
+    public enum Operation { GET, CREATE, UPDATE, DELETE, BATCH, IMPORT }
+
+    private static final EnumSet<Operation> DUPLICATE_EMAIL_OPERATIONS =
+            EnumSet.of(Operation.CREATE, Operation.UPDATE, Operation.BATCH, Operation.IMPORT);
+    private static final EnumSet<Operation> NOT_FOUND_OPERATIONS =
+            EnumSet.of(Operation.GET, Operation.UPDATE, Operation.DELETE, Operation.BATCH);
+
+    private final Counter[] duplicateEmails = new Counter[Operation.values().length];
+    private final Counter[] notFound = new Counter[Operation.values().length];
+
+    public UserMetrics(MeterRegistry meters) {
+        for (Operation operation : DUPLICATE_EMAIL_OPERATIONS) {
+            duplicateEmails[operation.ordinal()] = Counter.builder("users.duplicate.email")
+                    .description("Writes rejected because another user has the email")
+                    .tag("operation", tagValue(operation))
+                    .register(meters);
+        }
+        for (Operation operation : NOT_FOUND_OPERATIONS) {
+            notFound[operation.ordinal()] = Counter.builder("users.not.found")
+                    .description("Requests for a user ID that does not exist")
+                    .tag("operation", tagValue(operation))
+                    .register(meters);
+        }
+    }
+
+    public void duplicateEmail(Operation operation) {
+        duplicateEmails[operation.ordinal()].increment();
+    }
+
+    public void notFound(Operation operation) {
+        notFound[operation.ordinal()].increment();
+    }
+
+    private static String tagValue(Operation operation) {
+        return operation.name().toLowerCase(Locale.ROOT);
+    }
+}
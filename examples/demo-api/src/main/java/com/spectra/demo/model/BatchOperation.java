@@ -0,0 +1,78 @@
+package com.spectra.demo.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.util.Locale;
+
+/**
+ * One create, update or delete in a batch request
+ *
+ * Creates carry a user, updates an ID and a user, deletes only an ID.
+ */
+public class BatchOperation {
+
+    public enum Type {
+        CREATE, UPDATE, DELETE;
+
+        /**
+         * Unknown names map to null so one bad operation is reported on its own
+         * instead of failing the whole batch.
+         */
+        @JsonCreator
+        public static Type of(String value) {
+            for (Type type : values()) {
+                if (type.name().equalsIgnoreCase(value)) {
+                    return type;
+                }
+            }
+            return null;
+        }
+
+        @JsonValue
+        public String toJson() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private Type op;
+
+    private Long id;
+
+    private User user;
+
+    // Default constructor
+    public BatchOperation() {}
+
+    // Constructor with parameters
+    public BatchOperation(Type op, Long id, User user) {
+        this.op = op;
+        this.id = id;
+        this.user = user;
+    }
+
+    // Getters and Setters
+    public Type getOp() {
+        return op;
+    }
+
+    public void setOp(Type op) {
+        this.op = op;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public void setUser(User user) {
+        this.user = user;
+    }
+}
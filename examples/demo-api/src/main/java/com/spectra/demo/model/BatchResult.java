@@ -0,0 +1,42 @@
+package com.spectra.demo.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Outcome of one operation in a batch request, reported with the HTTP status
+ * the equivalent single-user call would have returned
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchResult {
+
+    private final int index;
+
+    private final int status;
+
+    private final User user;
+
+    private final String error;
+
+    public BatchResult(int index, int status, User user, String error) {
+        this.index = index;
+        this.status = status;
+        this.user = user;
+        this.error = error;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,74 @@
+package com.spectra.demo.model;
+
+import java.util.List;
+
+/**
+ * Outcome of a bulk import: how many lines were read, imported and rejected,
+ * with the first rejected lines and why
+ */
+public class ImportSummary {
+
+    private final long lines;
+
+    private final long imported;
+
+    private final long rejected;
+
+    private final List<Rejection> rejections;
+
+    private final long durationMs;
+
+    public ImportSummary(long lines, long imported, long rejected, List<Rejection> rejections, long durationMs) {
+        this.lines = lines;
+        this.imported = imported;
+        this.rejected = rejected;
+        this.rejections = rejections;
+        this.durationMs = durationMs;
+    }
+
+    public long getLines() {
+        return lines;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * @return the first rejected lines; rejected counts all of them
+     */
+    public List<Rejection> getRejections() {
+        return rejections;
+    }
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    /**
+     * A line that was not imported
+     */
+    public static class Rejection {
+
+        private final long line;
+
+        private final String error;
+
+        public Rejection(long line, String error) {
+            this.line = line;
+            this.error = error;
+        }
+
+        public long getLine() {
+            return line;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+}
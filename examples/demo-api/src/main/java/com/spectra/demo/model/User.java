@@ -1,5 +1,7 @@
 package com.spectra.demo.model;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 import javax.validation.constraints.Email;
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.Size;
@@ -28,6 +30,11 @@ public class User {
     
     private String department;
     
+    // Stamped by the store on every write; never reused, so it can back an ETag.
+    // Read-only: clients send it back through If-Match, not the body
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private long version;
+    
     // Default constructor
     public User() {}
     
@@ -81,6 +88,14 @@ public class User {
         this.department = department;
     }
     
+    public long getVersion() {
+        return version;
+    }
+    
+    public void setVersion(long version) {
+        this.version = version;
+    }
+    
     @Override
     public String toString() {
         return "User{" +
@@ -89,6 +104,7 @@ public class User {
                 ", email='" + email + '\'' +
                 ", age=" + age +
                 ", department='" + department + '\'' +
+                ", version=" + version +
                 '}';
     }
 } 
\ No newline at end of file
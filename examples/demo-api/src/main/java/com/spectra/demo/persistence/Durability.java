@@ -0,0 +1,13 @@
+package com.spectra.demo.persistence;
+
+/**
+ * How writes are made durable, set with demo.persistence.durability
+ */
+public enum Durability {
+    /** No mutation log; users live in memory only */
+    NONE,
+    /** Writes are logged and fsynced in the background; a crash may lose the last batch interval */
+    BATCHED,
+    /** A write is acknowledged only after its log record is fsynced */
+    SYNC
+}
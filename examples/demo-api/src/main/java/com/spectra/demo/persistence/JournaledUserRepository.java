@@ -0,0 +1,192 @@
+package com.spectra.demo.persistence;
+
+import com.spectra.demo.model.BatchOperation;
+import com.spectra.demo.model.User;
+import com.spectra.demo.repository.UserPage;
+import com.spectra.demo.repository.UserRepository;
+import com.spectra.demo.repository.WriteListener;
+import com.spectra.demo.repository.WriteResult;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * User store that records every accepted write in a MutationLog
+ *
+ * The log is the underlying store's WriteListener, so the store appends each
+ * write while it still holds its own lock for the user concerned: the log
+ * holds each user's writes in the order the store applied them, and writers
+ * to different users never wait on a lock here. Waiting for the fsync
+ * happens after the store has released its lock, which is what lets
+ * concurrent writers share a single force. Once the log has failed, writes
+ * are refused before they reach the store. Reads go straight to the
+ * underlying store.
+ *
+ * Since a write is appended only once it is applied, any log sequence read
+ * covers writes already in the store, which gives snapshots their starting
+ * point without stopping writers.
+ */
+public class JournaledUserRepository implements UserRepository {
+
+    private final UserRepository delegate;
+    private final MutationLog log;
+    private volatile long snapshotSequence;
+
+    /**
+     * Starts logging the delegate's writes, so it must already hold the snapshot and the replayed log.
+     * @param snapshotSequence log sequence covered by the snapshot the store was loaded from, 0 if none
+     */
+    public JournaledUserRepository(UserRepository delegate, MutationLog log, long snapshotSequence) {
+        this.delegate = delegate;
+        this.log = log;
+        this.snapshotSequence = snapshotSequence;
+        delegate.addWriteListener(log);
+    }
+
+    @Override
+    public Optional<User> findById(long id) {
+        return delegate.findById(id);
+    }
+
+    @Override
+    public UserPage findPage(Long after, int limit) {
+        return delegate.findPage(after, limit);
+    }
+
+    @Override
+    public List<User> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public List<User> findByDepartment(String department) {
+        return delegate.findByDepartment(department);
+    }
+
+    @Override
+    public int count() {
+        return delegate.count();
+    }
+
+    @Override
+    public long version() {
+        return delegate.version();
+    }
+
+    @Override
+    public long departmentVersion(String department) {
+        return delegate.departmentVersion(department);
+    }
+
+    @Override
+    public void indexSizes(BiConsumer<String, LongSupplier> gauge) {
+        delegate.indexSizes(gauge);
+    }
+
+    @Override
+    public void forEach(Consumer<? super User> action) {
+        delegate.forEach(action);
+    }
+
+    @Override
+    public WriteResult create(User user) {
+        log.ensureWritable();
+        return durable(delegate.create(user));
+    }
+
+    @Override
+    public WriteResult update(long id, User user, long expectedVersion) {
+        log.ensureWritable();
+        return durable(delegate.update(id, user, expectedVersion));
+    }
+
+    @Override
+    public WriteResult delete(long id) {
+        log.ensureWritable();
+        return durable(delegate.delete(id));
+    }
+
+    /**
+     * Apply the whole batch and wait for a single fsync.
+     */
+    @Override
+    public List<WriteResult> applyBatch(List<BatchOperation> operations) {
+        log.ensureWritable();
+        List<WriteResult> results = delegate.applyBatch(operations);
+        if (results.stream().anyMatch(WriteResult::isOk)) {
+            log.awaitDurable(log.lastSequence());
+        }
+        return results;
+    }
+
+    @Override
+    public void restore(User user) {
+        log.ensureWritable();
+        delegate.restore(user);
+        log.awaitDurable(log.lastSequence());
+    }
+
+    @Override
+    public void reset(Collection<User> seed) {
+        log.ensureWritable();
+        delegate.reset(seed);
+        log.awaitDurable(log.lastSequence());
+    }
+
+    @Override
+    public void addWriteListener(WriteListener listener) {
+        delegate.addWriteListener(listener);
+    }
+
+    @Override
+    public long nextId() {
+        return delegate.nextId();
+    }
+
+    /**
+     * Not logged: only meant for loading a snapshot, which records the next ID itself.
+     */
+    @Override
+    public void advanceNextId(long nextId) {
+        delegate.advanceNextId(nextId);
+    }
+
+    /**
+     * @return number of logged writes a restart would replay on top of the latest snapshot
+     */
+    public long recordsSinceSnapshot() {
+        return log.lastSequence() - snapshotSequence;
+    }
+
+    /**
+     * Write a snapshot of the store without blocking writers, then drop the log
+     * records it covers.
+     */
+    public UserSnapshot snapshot(Path file) throws IOException {
+        // Sequence first: every write it covers has its ID below the next ID read after it
+        long sequence = log.lastSequence();
+        long nextId = delegate.nextId();
+        UserSnapshot snapshot = UserSnapshot.write(file, sequence, nextId, delegate);
+        snapshotSequence = sequence;
+        log.compactThrough(sequence);
+        return snapshot;
+    }
+
+    /**
+     * Wait for the fsync of the caller's records. The last sequence read after
+     * the write is at least the caller's own, and the writer forces records
+     * in batches, so waiting for a few later ones costs nothing extra.
+     */
+    private WriteResult durable(WriteResult result) {
+        if (result.isOk()) {
+            log.awaitDurable(log.lastSequence());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,564 @@
+package com.spectra.demo.persistence;
+
+import com.spectra.demo.logging.EventLogger;
+import com.spectra.demo.model.User;
+import com.spectra.demo.repository.UserRepository;
+import com.spectra.demo.repository.WriteListener;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead log of user mutations
+ *
+ * Each record is framed as [int payload length][int CRC32][payload], the
+ * payload being [long sequence][byte type][body]. Appenders only hand their
+ * encoded record to an in-memory batch; a single writer thread drains the
+ * batch with one gathering write and one FileChannel.force, so every writer
+ * that arrived while the previous force was running shares the next one
+ * (group commit). With SYNC durability awaitDurable blocks until a record's
+ * batch is forced; with BATCHED the writer forces on a fixed interval and
+ * nobody waits for their own record. Either way, once records not yet
+ * written hold more than maxQueuedBytes, awaitDurable waits for the writer to
+ * take them, so a writer faster than the disk is held to the disk's pace
+ * instead of queueing without bound.
+ *
+ * On startup the log is replayed up to the last intact record; a torn or
+ * corrupt tail left by a crash is truncated. Once a snapshot covers a prefix
+ * of the log, compactThrough drops that prefix.
+ *
+ * A failed write or force is final: the writer cuts the file back to the
+ * start of the failed batch, logs the error and stops, and every later append
+ * or awaitDurable throws it. Writing on after a torn record would only
+ * produce records that replay, which stops at the tear, throws away.
+ */
+public class MutationLog implements WriteListener, AutoCloseable {
+
+    public static final byte PUT = 1;
+    public static final byte DELETE = 2;
+    public static final byte RESET = 3;
+
+    public static final long DEFAULT_MAX_QUEUED_BYTES = 16 * 1024 * 1024;
+
+    private static final int HEADER_BYTES = Integer.BYTES * 2;
+
+    private final Path file;
+    private final Durability durability;
+    private final long batchIntervalNanos;
+    private final long maxQueuedBytes;
+    private final EventLogger events;
+    // Replaced by compaction; only the writer thread touches it once replay has finished
+    private FileChannel channel;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition pendingAvailable = lock.newCondition();
+    private final Condition durableAdvanced = lock.newCondition();
+    private final Condition compacted = lock.newCondition();
+    private List<ByteBuffer> pending = new ArrayList<>();
+    // Bytes appended but not yet written, including the batch the writer is on; read without the lock
+    private volatile long queuedBytes;
+    private long appendedSequence;
+    private long durableSequence;
+    private long compactRequest = -1;
+    private IOException failure;
+    private IOException compactFailure;
+    private long forces;
+    private boolean closed;
+    private Thread writer;
+
+    public MutationLog(Path file, Durability durability, long batchIntervalMillis, EventLogger events)
+            throws IOException {
+        this(file, durability, batchIntervalMillis, DEFAULT_MAX_QUEUED_BYTES, events);
+    }
+
+    /**
+     * @param maxQueuedBytes encoded records waiting for the writer beyond which awaitDurable holds callers back
+     */
+    public MutationLog(Path file, Durability durability, long batchIntervalMillis, long maxQueuedBytes,
+                       EventLogger events) throws IOException {
+        this.file = file;
+        this.durability = durability;
+        this.batchIntervalNanos = TimeUnit.MILLISECONDS.toNanos(batchIntervalMillis);
+        this.maxQueuedBytes = maxQueuedBytes;
+        this.events = events;
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Apply every intact record after the given sequence to the target, truncate
+     * anything after the last intact record and start accepting appends.
+     * @param afterSequence sequence already reflected in the target, 0 for an empty target
+     * @return number of records replayed
+     */
+    public long replay(UserRepository target, long afterSequence) throws IOException {
+        long validBytes = 0;
+        long records = 0;
+        appendedSequence = afterSequence;
+        channel.position(0);
+        InputStream stream = Channels.newInputStream(channel);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 1 << 16));
+        while (true) {
+            byte[] payload;
+            try {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length < Long.BYTES + 1 || length > channel.size()) {
+                    break;
+                }
+                payload = new byte[length];
+                in.readFully(payload);
+                if (checksum != crc(payload)) {
+                    break;
+                }
+            } catch (EOFException e) {
+                break;
+            }
+            ByteBuffer record = ByteBuffer.wrap(payload);
+            long sequence = record.getLong();
+            if (sequence > afterSequence) {
+                apply(record.get(), record, target);
+                appendedSequence = sequence;
+                records++;
+            }
+            validBytes += HEADER_BYTES + payload.length;
+        }
+        channel.truncate(validBytes);
+        channel.position(validBytes);
+        durableSequence = appendedSequence;
+        startWriter();
+        return records;
+    }
+
+    /**
+     * Apply one record body to the target; also used by replication followers,
+     * which receive the same records over the network.
+     */
+    public static void apply(byte type, ByteBuffer body, UserRepository target) {
+        switch (type) {
+            case PUT:
+                target.restore(UserCodec.decode(body));
+                break;
+            case DELETE:
+                target.delete(body.getLong());
+                break;
+            case RESET:
+                int count = body.getInt();
+                List<User> seed = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    seed.add(UserCodec.decode(body));
+                }
+                target.reset(seed);
+                break;
+            default:
+                throw new IllegalStateException("Unknown mutation log record type " + type);
+        }
+    }
+
+    /**
+     * @return sequence of the most recently appended record
+     */
+    public long lastSequence() {
+        lock.lock();
+        try {
+            return appendedSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of times the writer has forced the file; appended records per force is the group commit ratio
+     */
+    public long forceCount() {
+        lock.lock();
+        try {
+            return forces;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return bytes of records appended but not yet written to the file
+     */
+    public long queuedBytes() {
+        return queuedBytes;
+    }
+
+    /**
+     * Throw the failure that stopped the writer, if any, so a caller can refuse
+     * a write before applying it rather than fail to log it afterwards.
+     */
+    public void ensureWritable() {
+        lock.lock();
+        try {
+            throwIfFailed();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long appendPut(User user) {
+        return append(PUT, UserCodec.encode(user));
+    }
+
+    public long appendDelete(long id) {
+        return append(DELETE, encodeDelete(id));
+    }
+
+    public long appendReset(Collection<User> seed) {
+        return append(RESET, encodeReset(seed));
+    }
+
+    @Override
+    public void put(User user) {
+        appendPut(user);
+    }
+
+    @Override
+    public void delete(long id) {
+        appendDelete(id);
+    }
+
+    @Override
+    public void reset(Collection<User> seed) {
+        appendReset(seed);
+    }
+
+    public static byte[] encodeDelete(long id) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(id).array();
+    }
+
+    public static byte[] encodeReset(Collection<User> seed) {
+        List<byte[]> users = new ArrayList<>(seed.size());
+        int bytes = Integer.BYTES;
+        for (User user : seed) {
+            byte[] encoded = UserCodec.encode(user);
+            users.add(encoded);
+            bytes += encoded.length;
+        }
+        ByteBuffer body = ByteBuffer.allocate(bytes).putInt(users.size());
+        users.forEach(body::put);
+        return body.array();
+    }
+
+    /**
+     * Queue a record for the writer thread.
+     * @return its sequence number, to pass to awaitDurable
+     */
+    private long append(byte type, byte[] body) {
+        int length = Long.BYTES + 1 + body.length;
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + length);
+        record.position(HEADER_BYTES + Long.BYTES);
+        record.put(type).put(body);
+
+        lock.lock();
+        try {
+            throwIfFailed();
+            if (closed) {
+                throw new IllegalStateException("Mutation log is closed");
+            }
+            long sequence = ++appendedSequence;
+            record.putLong(HEADER_BYTES, sequence);
+            record.putInt(0, length);
+            record.putInt(Integer.BYTES, crc(record.array(), HEADER_BYTES, length));
+            record.rewind();
+            pending.add(record);
+            queuedBytes += record.remaining();
+            pendingAvailable.signal();
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Block until the record is on disk when durability is SYNC. Otherwise
+     * return at once unless the queue is over maxQueuedBytes, in which case
+     * wait until the writer has written it down to the limit. Call it after
+     * releasing any lock other writers need, as appends keep the queue filling.
+     */
+    public void awaitDurable(long sequence) {
+        if (durability != Durability.SYNC && queuedBytes <= maxQueuedBytes) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (durability == Durability.SYNC) {
+                while (durableSequence < sequence) {
+                    throwIfFailed();
+                    durableAdvanced.awaitUninterruptibly();
+                }
+            } else {
+                while (queuedBytes > maxQueuedBytes && !closed) {
+                    throwIfFailed();
+                    durableAdvanced.awaitUninterruptibly();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drop every record up to and including the sequence, once a snapshot holds
+     * their effect. Runs on the writer thread, which keeps appending afterwards.
+     */
+    public void compactThrough(long sequence) throws IOException {
+        lock.lock();
+        try {
+            compactRequest = Math.max(compactRequest, sequence);
+            pendingAvailable.signal();
+            while (compactRequest >= 0) {
+                if (failure != null) {
+                    throw failure;
+                }
+                if (closed) {
+                    return;
+                }
+                compacted.awaitUninterruptibly();
+            }
+            if (compactFailure != null) {
+                IOException error = compactFailure;
+                compactFailure = null;
+                throw error;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Called with the lock held
+    private void throwIfFailed() {
+        if (failure != null) {
+            throw new UncheckedIOException("Mutation log write failed", failure);
+        }
+    }
+
+    private void startWriter() {
+        writer = new Thread(this::writeLoop, "demo-mutation-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private void writeLoop() {
+        while (true) {
+            List<ByteBuffer> batch;
+            long batchSequence;
+            long compactSequence;
+            lock.lock();
+            try {
+                while (pending.isEmpty() && compactRequest < 0 && !closed) {
+                    pendingAvailable.awaitUninterruptibly();
+                }
+                if (pending.isEmpty() && closed) {
+                    compacted.signalAll();
+                    return;
+                }
+                batch = pending;
+                batchSequence = appendedSequence;
+                compactSequence = compactRequest;
+                pending = new ArrayList<>();
+            } finally {
+                lock.unlock();
+            }
+
+            IOException error = null;
+            long batchStart = -1;
+            boolean forced = false;
+            ByteBuffer[] buffers = batch.toArray(new ByteBuffer[0]);
+            long batchBytes = 0;
+            for (ByteBuffer buffer : buffers) {
+                batchBytes += buffer.remaining();
+            }
+            try {
+                batchStart = channel.position();
+                long remaining = batchBytes;
+                while (remaining > 0) {
+                    remaining -= channel.write(buffers);
+                }
+                if (durability != Durability.NONE && !batch.isEmpty()) {
+                    channel.force(false);
+                    forced = true;
+                }
+            } catch (IOException e) {
+                error = e;
+                discardFrom(batchStart);
+            }
+
+            IOException compactError = null;
+            // Every record up to the requested sequence was appended before the request, so it is in the file by now
+            if (error == null && compactSequence >= 0) {
+                try {
+                    compact(compactSequence);
+                } catch (IOException e) {
+                    compactError = e;
+                }
+            }
+
+            lock.lock();
+            try {
+                if (error != null) {
+                    failure = error;
+                } else {
+                    durableSequence = batchSequence;
+                }
+                queuedBytes -= batchBytes;
+                if (forced) {
+                    forces++;
+                }
+                if (compactSequence >= 0 && compactRequest == compactSequence) {
+                    compactRequest = -1;
+                    compactFailure = compactError;
+                }
+                durableAdvanced.signalAll();
+                compacted.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            if (error != null) {
+                events.error("store.log.write_failed", "file", file, "error", error.toString());
+                return;
+            }
+
+            if (durability == Durability.BATCHED && batchIntervalNanos > 0) {
+                // Let appends pile up so the next force covers the whole interval
+                long deadline = System.nanoTime() + batchIntervalNanos;
+                lock.lock();
+                try {
+                    long wait;
+                    while (!closed && (wait = deadline - System.nanoTime()) > 0) {
+                        pendingAvailable.awaitNanos(wait);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Cut off whatever part of a failed batch reached the file, so the file
+     * ends with the last record that was written whole.
+     */
+    private void discardFrom(long batchStart) {
+        if (batchStart < 0) {
+            return;
+        }
+        try {
+            channel.truncate(batchStart);
+            channel.position(batchStart);
+            channel.force(false);
+        } catch (IOException e) {
+            // Nothing follows the torn record anyway, and replay truncates it
+        }
+    }
+
+    /**
+     * Copy the records after the sequence into a fresh file and swap it in.
+     */
+    private void compact(long throughSequence) throws IOException {
+        long size = channel.size();
+        long cut = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES + Long.BYTES);
+        while (cut < size) {
+            header.clear();
+            channel.read(header, cut);
+            if (header.getLong(HEADER_BYTES) > throughSequence) {
+                break;
+            }
+            cut += HEADER_BYTES + header.getInt(0);
+        }
+        if (cut == 0) {
+            return;
+        }
+
+        Path temp = file.resolveSibling(file.getFileName() + ".compact");
+        try (FileChannel tail = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (long position = cut; position < size; ) {
+                position += channel.transferTo(position, size - position, tail);
+            }
+            tail.force(false);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory(file);
+        channel.close();
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+    }
+
+    /**
+     * Make a rename in the file's directory durable.
+     */
+    static void forceDirectory(Path file) {
+        try (FileChannel directory = FileChannel.open(file.toAbsolutePath().getParent(), StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            // Directories cannot be opened or synced on every platform; the rename still happened
+        }
+    }
+
+    /**
+     * Flush and force whatever is queued, then close the file.
+     */
+    @Override
+    public void close() throws IOException {
+        boolean failed;
+        lock.lock();
+        try {
+            closed = true;
+            failed = failure != null;
+            pendingAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (writer != null) {
+            try {
+                writer.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (!failed) {
+            channel.force(true);
+        }
+        channel.close();
+    }
+
+    private static int crc(byte[] payload) {
+        return crc(payload, 0, payload.length);
+    }
+
+    private static int crc(byte[] bytes, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,91 @@
+package com.spectra.demo.persistence;
+
+import com.spectra.demo.logging.EventLogger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Takes a snapshot on a background thread whenever the mutation log has grown
+ * by enough records since the last one, so startup replays a short tail.
+ */
+public class SnapshotScheduler implements AutoCloseable {
+
+    private final JournaledUserRepository users;
+    private final Path file;
+    private final long minRecords;
+    private final EventLogger events;
+    private final ScheduledExecutorService executor;
+
+    public SnapshotScheduler(JournaledUserRepository users, Path file,
+                             long intervalMillis, long minRecords, EventLogger events) {
+        this.users = users;
+        this.file = file;
+        this.minRecords = minRecords;
+        this.events = events;
+        this.executor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "demo-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::snapshotIfDue, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void snapshotIfDue() {
+        long pending = users.recordsSinceSnapshot();
+        if (pending == 0 || pending < minRecords) {
+            return;
+        }
+        long started = System.nanoTime();
+        try {
+            UserSnapshot snapshot = users.snapshot(file);
+            events.info("store.snapshot.written", "users", snapshot.getCount(),
+                    "ms", (System.nanoTime() - started) / 1_000_000);
+        } catch (Exception e) {
+            // Keep the schedule alive; the log still holds everything and the next run retries
+            events.error("store.snapshot.failed", "error", e.toString());
+        }
+    }
+
+    /**
+     * A snapshot holding every write logged before the call. The existing file
+     * is reused while no write has been logged since it was taken; otherwise a
+     * new one is taken on the snapshot thread, so it never races a scheduled
+     * run, and a caller queued behind it reuses it if nothing was written in
+     * between.
+     * @return the snapshot file, which stays readable through an open channel even if a later snapshot replaces it
+     */
+    public Path currentSnapshot() throws IOException {
+        if (isCurrent()) {
+            return file;
+        }
+        try {
+            return executor.submit(() -> {
+                if (!isCurrent()) {
+                    users.snapshot(file);
+                }
+                return file;
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a snapshot", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Snapshot failed", e.getCause());
+        }
+    }
+
+    private boolean isCurrent() {
+        return users.recordsSinceSnapshot() == 0 && Files.exists(file);
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+    }
+}
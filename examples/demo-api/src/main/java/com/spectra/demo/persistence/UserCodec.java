@@ -0,0 +1,77 @@
+package com.spectra.demo.persistence;
+
+import com.spectra.demo.model.User;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact binary encoding of a User
+ *
+ * Layout: id (long), version (long), age (int, MIN_VALUE when absent), then
+ * name, email and department as an int byte length (-1 for null) followed by
+ * UTF-8 bytes.
+ */
+public final class UserCodec {
+
+    private static final int ABSENT_AGE = Integer.MIN_VALUE;
+
+    private UserCodec() {
+    }
+
+    public static byte[] encode(User user) {
+        byte[] name = utf8(user.getName());
+        byte[] email = utf8(user.getEmail());
+        byte[] department = utf8(user.getDepartment());
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES * 2 + Integer.BYTES * 4
+                + length(name) + length(email) + length(department));
+        buffer.putLong(user.getId());
+        buffer.putLong(user.getVersion());
+        buffer.putInt(user.getAge() == null ? ABSENT_AGE : user.getAge());
+        putString(buffer, name);
+        putString(buffer, email);
+        putString(buffer, department);
+        return buffer.array();
+    }
+
+    /**
+     * Read one user starting at the buffer's position, leaving it just past the user.
+     */
+    public static User decode(ByteBuffer buffer) {
+        long id = buffer.getLong();
+        long version = buffer.getLong();
+        int age = buffer.getInt();
+        String name = getString(buffer);
+        String email = getString(buffer);
+        String department = getString(buffer);
+        User user = new User(id, name, email, age == ABSENT_AGE ? null : age, department);
+        user.setVersion(version);
+        return user;
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] value) {
+        return value == null ? 0 : value.length;
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] value) {
+        if (value == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(value.length).put(value);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,184 @@
+package com.spectra.demo.persistence;
+
+import com.spectra.demo.model.User;
+import com.spectra.demo.repository.UserPage;
+import com.spectra.demo.repository.UserRepository;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Point-in-time image of the user store, written and read through memory-mapped files
+ *
+ * Layout: a header of magic, format version, the mutation log sequence the
+ * snapshot starts from, the next ID to allocate, the user count and a CRC32
+ * of the body; then every user in ID order, encoded with UserCodec.
+ *
+ * A snapshot is fuzzy: users are read page by page while writes continue, so
+ * it holds every write up to its sequence and possibly some later ones.
+ * Replaying the log records after that sequence on top of it converges to the
+ * exact state, because each record sets a user to its final value or removes it.
+ */
+public final class UserSnapshot {
+
+    private static final int MAGIC = 0x55534E50; // "USNP"
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = Integer.BYTES * 3 + Long.BYTES * 3;
+    private static final int WRITE_REGION_BYTES = 8 << 20;
+    private static final long READ_REGION_BYTES = 256L << 20;
+    private static final int PAGE_SIZE = 1024;
+
+    private final long sequence;
+    private final long nextId;
+    private final long count;
+
+    private UserSnapshot(long sequence, long nextId, long count) {
+        this.sequence = sequence;
+        this.nextId = nextId;
+        this.count = count;
+    }
+
+    /**
+     * @return the last mutation log sequence already reflected in the snapshot
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getNextId() {
+        return nextId;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Write a snapshot of the source to a temporary file and move it over the
+     * previous one once it is fully on disk.
+     */
+    public static UserSnapshot write(Path file, long sequence, long nextId, UserRepository source) throws IOException {
+        return write(file, sequence, nextId, source, WRITE_REGION_BYTES);
+    }
+
+    static UserSnapshot write(Path file, long sequence, long nextId, UserRepository source, int writeRegionBytes)
+            throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        long count = 0;
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long regionStart = 0;
+            MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_WRITE, 0, writeRegionBytes);
+            region.position(HEADER_BYTES);
+
+            // Page in ID order rather than forEach, so loading appends rows in order
+            Long after = null;
+            do {
+                UserPage page = source.findPage(after, PAGE_SIZE);
+                for (User user : page.getUsers()) {
+                    byte[] record = UserCodec.encode(user);
+                    if (region.remaining() < record.length) {
+                        region.force();
+                        regionStart += region.position();
+                        region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart,
+                                Math.max(writeRegionBytes, record.length));
+                    }
+                    region.put(record);
+                    crc.update(record);
+                    count++;
+                }
+                after = page.getNextCursor();
+            } while (after != null);
+
+            long end = regionStart + region.position();
+            region.force();
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION)
+                    .putLong(sequence).putLong(nextId).putLong(count)
+                    .putInt((int) crc.getValue());
+            header.force();
+            // The last region was mapped past the data; cut the file back to its real length
+            channel.truncate(end);
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        MutationLog.forceDirectory(file);
+        return new UserSnapshot(sequence, nextId, count);
+    }
+
+    /**
+     * Restore every user of the snapshot into the target.
+     * @return the snapshot header, or null if there is no snapshot yet
+     * @throws IllegalStateException if the snapshot is damaged
+     */
+    public static UserSnapshot load(Path file, UserRepository target) throws IOException {
+        return load(file, target, READ_REGION_BYTES);
+    }
+
+    static UserSnapshot load(Path file, UserRepository target, long readRegionBytes) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES) {
+                throw damaged(file);
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw damaged(file);
+            }
+            UserSnapshot snapshot = new UserSnapshot(header.getLong(), header.getLong(), header.getLong());
+            int checksum = header.getInt();
+
+            CRC32 crc = new CRC32();
+            long regionStart = HEADER_BYTES;
+            MappedByteBuffer region = map(channel, regionStart, size, readRegionBytes);
+            for (long i = 0; i < snapshot.count; i++) {
+                int start = region.position();
+                User user;
+                try {
+                    user = UserCodec.decode(region);
+                } catch (BufferUnderflowException e) {
+                    // The user straddles the end of this region: map the next one from its first byte
+                    if (regionStart + region.limit() == size) {
+                        throw damaged(file);
+                    }
+                    regionStart += start;
+                    region = map(channel, regionStart, size, readRegionBytes);
+                    start = 0;
+                    user = UserCodec.decode(region);
+                }
+                ByteBuffer record = region.duplicate();
+                record.position(start).limit(region.position());
+                crc.update(record);
+                target.restore(user);
+            }
+            if ((int) crc.getValue() != checksum) {
+                throw damaged(file);
+            }
+            target.advanceNextId(snapshot.nextId);
+            return snapshot;
+        } catch (BufferUnderflowException | NegativeArraySizeException e) {
+            throw damaged(file);
+        }
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long start, long size, long regionBytes)
+            throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(regionBytes, size - start));
+    }
+
+    private static IllegalStateException damaged(Path file) {
+        return new IllegalStateException("Snapshot " + file + " is damaged");
+    }
+}
@@ -0,0 +1,192 @@
+package com.spectra.demo.replication;
+
+import com.spectra.demo.logging.EventLogger;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Enumeration;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+
+import static com.spectra.demo.replication.LeaderSequenceFilter.API_PREFIX;
+import static com.spectra.demo.replication.LeaderSequenceFilter.SEQUENCE_HEADER;
+
+/**
+ * Routes API requests on a follower: reads are served locally, writes by the leader
+ *
+ * A write is forwarded to the leader's HTTP endpoint and its response
+ * relayed unchanged. With read-your-writes on, the response is held until
+ * this follower has applied the write, so the client's next read here sees
+ * it. A read sent with X-Replication-Sequence waits up to the timeout for
+ * this follower to reach that sequence and is answered 503 if it does not;
+ * any other read is answered from the local store as it stands, and 503
+ * only while no complete copy of the leader's store is loaded. Reads carry
+ * the sequence they reflect, so a load balancer or client can see the lag.
+ */
+public class FollowerRoutingFilter implements Filter {
+
+    // Connection-level headers, and those HttpClient sets itself and refuses from callers
+    private static final Set<String> NOT_FORWARDED = Set.of("connection", "content-length", "expect", "host",
+            "keep-alive", "proxy-authenticate", "proxy-authorization", "te", "trailer", "transfer-encoding", "upgrade");
+    private static final Duration FORWARD_TIMEOUT = Duration.ofSeconds(30);
+
+    private final ReplicationClient replication;
+    private final String leaderUrl;
+    private final boolean readYourWrites;
+    private final long waitMillis;
+    private final EventLogger events;
+    private final HttpClient http;
+
+    /**
+     * @param leaderUrl base URL of the leader's HTTP server, e.g. http://127.0.0.1:8080
+     * @param waitMillis longest a request waits for this follower to catch up
+     */
+    public FollowerRoutingFilter(ReplicationClient replication, String leaderUrl, boolean readYourWrites,
+                                 long waitMillis, EventLogger events) {
+        this.replication = replication;
+        this.leaderUrl = leaderUrl.endsWith("/") ? leaderUrl.substring(0, leaderUrl.length() - 1) : leaderUrl;
+        this.readYourWrites = readYourWrites;
+        this.waitMillis = waitMillis;
+        this.events = events;
+        this.http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(2))
+                .build();
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        HttpServletRequest http = (HttpServletRequest) request;
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+        if (!http.getRequestURI().startsWith(API_PREFIX)) {
+            chain.doFilter(request, response);
+        } else if (!LeaderSequenceFilter.isRead(http)) {
+            forward(http, httpResponse);
+        } else if (caughtUp(http, httpResponse)) {
+            httpResponse.setHeader(SEQUENCE_HEADER, Long.toString(replication.appliedSequence()));
+            chain.doFilter(request, response);
+        }
+    }
+
+    /**
+     * @return false if the response was already sent because this follower cannot answer the read yet
+     */
+    private boolean caughtUp(HttpServletRequest request, HttpServletResponse response) {
+        String wanted = request.getHeader(SEQUENCE_HEADER);
+        if (wanted == null) {
+            if (replication.isSynced()) {
+                return true;
+            }
+            unavailable(response);
+            return false;
+        }
+        long sequence;
+        try {
+            sequence = Long.parseLong(wanted.trim());
+        } catch (NumberFormatException e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            return false;
+        }
+        if (replication.awaitApplied(sequence, waitMillis)) {
+            return true;
+        }
+        events.info("replication.read.behind", "wanted", sequence, "applied", replication.appliedSequence());
+        unavailable(response);
+        return false;
+    }
+
+    private void forward(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String query = request.getQueryString();
+        URI target = URI.create(leaderUrl + request.getRequestURI() + (query == null ? "" : "?" + query));
+        HttpRequest.Builder forwarded = HttpRequest.newBuilder(target)
+                .timeout(FORWARD_TIMEOUT)
+                .method(request.getMethod(), body(request));
+        for (Enumeration<String> names = request.getHeaderNames(); names.hasMoreElements(); ) {
+            String name = names.nextElement();
+            if (NOT_FORWARDED.contains(name.toLowerCase(Locale.ROOT))) {
+                continue;
+            }
+            for (Enumeration<String> values = request.getHeaders(name); values.hasMoreElements(); ) {
+                forwarded.header(name, values.nextElement());
+            }
+        }
+
+        HttpResponse<byte[]> answer;
+        try {
+            answer = http.send(forwarded.build(), HttpResponse.BodyHandlers.ofByteArray());
+        } catch (IOException e) {
+            events.warn("replication.forward.failed", "leader", leaderUrl, "error", e.toString());
+            unavailable(response);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            unavailable(response);
+            return;
+        }
+
+        Optional<String> sequence = answer.headers().firstValue(SEQUENCE_HEADER);
+        if (readYourWrites && sequence.isPresent() && answer.statusCode() < 300) {
+            awaitWritten(sequence.get());
+        }
+        response.setStatus(answer.statusCode());
+        answer.headers().map().forEach((name, values) -> {
+            if (!NOT_FORWARDED.contains(name.toLowerCase(Locale.ROOT))) {
+                values.forEach(value -> response.addHeader(name, value));
+            }
+        });
+        response.setContentLength(answer.body().length);
+        response.getOutputStream().write(answer.body());
+    }
+
+    /**
+     * Stream the request body to the leader as it arrives rather than buffering
+     * it here first, keeping its length when the client sent one.
+     */
+    private static HttpRequest.BodyPublisher body(HttpServletRequest request) throws IOException {
+        long length = request.getContentLengthLong();
+        if (length == 0) {
+            return HttpRequest.BodyPublishers.noBody();
+        }
+        InputStream in = request.getInputStream();
+        HttpRequest.BodyPublisher streamed = HttpRequest.BodyPublishers.ofInputStream(() -> in);
+        return length < 0 ? streamed : HttpRequest.BodyPublishers.fromPublisher(streamed, length);
+    }
+
+    /**
+     * Hold a forwarded write's response until this follower has applied it, up to the timeout.
+     * @param leaderSequence the leader's X-Replication-Sequence for the write
+     */
+    private void awaitWritten(String leaderSequence) {
+        long written;
+        try {
+            written = Long.parseLong(leaderSequence.trim());
+        } catch (NumberFormatException e) {
+            // The write is done on the leader; without a sequence to wait for, answer at once
+            events.warn("replication.write.sequence_invalid", "value", leaderSequence);
+            return;
+        }
+        if (!replication.awaitApplied(written, waitMillis)) {
+            // The write is done on the leader; answer anyway, a read here may just not see it yet
+            events.warn("replication.write.behind", "wanted", written, "applied", replication.appliedSequence());
+        }
+    }
+
+    private static void unavailable(HttpServletResponse response) {
+        response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        response.setHeader("Retry-After", "1");
+    }
+}
@@ -0,0 +1,62 @@
+package com.spectra.demo.replication;
+
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Tells clients of the leader how far its replication log has got
+ *
+ * Every API response carries X-Replication-Sequence: for a read, the
+ * sequence the response reflects at least; for a write, a sequence its
+ * record is at or before. A client that sends the value back on a read to a
+ * follower is answered only once that follower has caught up with it. The
+ * value of a write is only known once the handler has run, so write
+ * responses, which are small, are buffered until then.
+ */
+public class LeaderSequenceFilter implements Filter {
+
+    public static final String SEQUENCE_HEADER = "X-Replication-Sequence";
+    static final String API_PREFIX = "/api/";
+
+    private final ReplicationLog log;
+
+    public LeaderSequenceFilter(ReplicationLog log) {
+        this.log = log;
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        HttpServletRequest http = (HttpServletRequest) request;
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+        if (!http.getRequestURI().startsWith(API_PREFIX)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        if (isRead(http)) {
+            httpResponse.setHeader(SEQUENCE_HEADER, Long.toString(log.lastSequence()));
+            chain.doFilter(request, response);
+            return;
+        }
+        ContentCachingResponseWrapper buffered = new ContentCachingResponseWrapper(httpResponse);
+        try {
+            chain.doFilter(request, buffered);
+        } finally {
+            buffered.setHeader(SEQUENCE_HEADER, Long.toString(log.lastSequence()));
+            buffered.copyBodyToResponse();
+        }
+    }
+
+    static boolean isRead(HttpServletRequest request) {
+        String method = request.getMethod();
+        return "GET".equals(method) || "HEAD".equals(method) || "OPTIONS".equals(method);
+    }
+}
@@ -0,0 +1,270 @@
+package com.spectra.demo.replication;
+
+import com.spectra.demo.cache.UserJsonCache;
+import com.spectra.demo.logging.EventLogger;
+import com.spectra.demo.model.User;
+import com.spectra.demo.persistence.MutationLog;
+import com.spectra.demo.persistence.UserCodec;
+import com.spectra.demo.repository.UserRepository;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.spectra.demo.replication.ReplicationProtocol.*;
+
+/**
+ * Follower side of replication: tails the leader's log into the local store
+ *
+ * A single thread connects to the leader, loads a copy of its store when
+ * it cannot resume, and applies each record in sequence order, reconnecting
+ * after a second whenever the connection drops. A copy is received whole
+ * and then replaces the local store in one reset. Until the first copy is
+ * loaded, and while a later one is received, isSynced is false; between
+ * copies the store only lags. Request threads wait on awaitApplied for
+ * read-your-writes.
+ */
+public class ReplicationClient implements ReplicationRun, AutoCloseable {
+
+    private static final long RECONNECT_MILLIS = 1000;
+    private static final int CONNECT_TIMEOUT_MILLIS = 2000;
+
+    private final String leaderHost;
+    private final int leaderPort;
+    // host:port, for events
+    private final String leader;
+    private final UserRepository users;
+    private final UserJsonCache jsonCache;
+    private final EventLogger events;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition advanced = lock.newCondition();
+    private volatile long appliedSequence;
+    private volatile long leaderSequence;
+    private volatile boolean synced;
+    // Leader run the applied sequence refers to, 0 while the store holds no complete copy; client thread only
+    private long runId;
+    // Leader run of the last complete copy, which every user version here comes from
+    private volatile long loadedRunId;
+
+    private volatile Socket socket;
+    private volatile boolean closed;
+    private Thread thread;
+
+    public ReplicationClient(String leaderHost, int leaderPort, UserRepository users,
+                             UserJsonCache jsonCache, EventLogger events) {
+        this.leaderHost = leaderHost;
+        this.leaderPort = leaderPort;
+        this.leader = leaderHost + ":" + leaderPort;
+        this.users = users;
+        this.jsonCache = jsonCache;
+        this.events = events;
+    }
+
+    /**
+     * Start following; called once the application is up, so nothing seeds the store after the first copy.
+     */
+    public synchronized void start() {
+        if (thread == null && !closed) {
+            thread = new Thread(this::followLoop, "demo-replication-follower");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * @return true once the store holds a complete copy of the leader's, possibly lagging
+     */
+    public boolean isSynced() {
+        return synced;
+    }
+
+    @Override
+    public long runId() {
+        return loadedRunId;
+    }
+
+    public long appliedSequence() {
+        return appliedSequence;
+    }
+
+    /**
+     * @return records the leader has that this follower has not applied yet, as of the last frame received
+     */
+    public long lag() {
+        return Math.max(0, leaderSequence - appliedSequence);
+    }
+
+    /**
+     * Wait until the record with the given sequence, and every one before it, is applied.
+     * @return false if it was not applied within the timeout
+     */
+    public boolean awaitApplied(long sequence, long timeoutMillis) {
+        if (synced && appliedSequence >= sequence) {
+            return true;
+        }
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        lock.lock();
+        try {
+            while (!(synced && appliedSequence >= sequence)) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = advanced.awaitNanos(remaining);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void followLoop() {
+        while (!closed) {
+            try {
+                follow();
+            } catch (IOException e) {
+                if (!closed) {
+                    events.warn("replication.leader.disconnected", "leader", leader, "error", e.toString());
+                }
+            } catch (RuntimeException e) {
+                // A record the store could not apply: start over from a fresh copy
+                runId = 0;
+                events.error("replication.apply_failed", "sequence", appliedSequence, "error", e.toString());
+            }
+            try {
+                Thread.sleep(RECONNECT_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void follow() throws IOException {
+        try (Socket connection = new Socket()) {
+            socket = connection;
+            if (closed) {
+                return;
+            }
+            connection.connect(new InetSocketAddress(leaderHost, leaderPort), CONNECT_TIMEOUT_MILLIS);
+            connection.setSoTimeout(READ_TIMEOUT_MILLIS);
+            connection.setTcpNoDelay(true);
+
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(runId);
+            out.writeLong(appliedSequence);
+            out.flush();
+            events.info("replication.leader.connected", "leader", leader, "sequence", appliedSequence);
+
+            DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream(), 1 << 16));
+            while (true) {
+                byte frame = in.readByte();
+                switch (frame) {
+                    case RECORD:
+                        byte[] record = new byte[in.readInt()];
+                        in.readFully(record);
+                        apply(ByteBuffer.wrap(record));
+                        break;
+                    case HEARTBEAT:
+                        leaderSequence = Math.max(leaderSequence, in.readLong());
+                        break;
+                    case SNAPSHOT:
+                        loadCopy(in);
+                        break;
+                    default:
+                        throw new IOException("Unknown replication frame " + frame);
+                }
+            }
+        }
+    }
+
+    /**
+     * Replace the local store with the copy that follows a SNAPSHOT frame.
+     */
+    private void loadCopy(DataInputStream in) throws IOException {
+        long copyRunId = in.readLong();
+        long started = System.nanoTime();
+        // The old position cannot be resumed from if the copy breaks off
+        runId = 0;
+        synced = false;
+        List<User> copy = new ArrayList<>();
+        byte frame;
+        while ((frame = in.readByte()) == USER) {
+            byte[] user = new byte[in.readInt()];
+            in.readFully(user);
+            copy.add(UserCodec.decode(ByteBuffer.wrap(user)));
+        }
+        if (frame != SNAPSHOT_END) {
+            throw new IOException("Unknown replication frame " + frame + " in store copy");
+        }
+        long sequence = in.readLong();
+        long nextId = in.readLong();
+        // One reset, so the store switches to the whole copy at once and a journal logs it as one record
+        users.reset(copy);
+        users.advanceNextId(nextId);
+        jsonCache.invalidateAll();
+        runId = copyRunId;
+        loadedRunId = copyRunId;
+        applied(sequence, true);
+        events.info("replication.copy.loaded", "users", copy.size(), "ms", (System.nanoTime() - started) / 1_000_000);
+    }
+
+    private void apply(ByteBuffer record) throws IOException {
+        long sequence = record.getLong();
+        if (sequence != appliedSequence + 1) {
+            runId = 0;
+            throw new IOException("Replication gap: expected record " + (appliedSequence + 1) + ", got " + sequence);
+        }
+        byte type = record.get();
+        if (type == MutationLog.DELETE) {
+            jsonCache.invalidate(record.getLong(record.position()));
+        }
+        MutationLog.apply(type, record, users);
+        if (type == MutationLog.RESET) {
+            jsonCache.invalidateAll();
+        }
+        applied(sequence, synced);
+    }
+
+    private void applied(long sequence, boolean complete) {
+        lock.lock();
+        try {
+            appliedSequence = sequence;
+            leaderSequence = Math.max(leaderSequence, sequence);
+            synced = complete;
+            advanced.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        Socket connection = socket;
+        if (connection != null) {
+            connection.close();
+        }
+        Thread follower;
+        synchronized (this) {
+            follower = thread;
+        }
+        if (follower != null) {
+            follower.interrupt();
+        }
+    }
+}
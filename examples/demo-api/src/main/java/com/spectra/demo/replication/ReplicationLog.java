@@ -0,0 +1,140 @@
+package com.spectra.demo.replication;
+
+import com.spectra.demo.model.User;
+import com.spectra.demo.persistence.MutationLog;
+import com.spectra.demo.persistence.UserCodec;
+import com.spectra.demo.repository.WriteListener;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The leader's most recent writes, kept in memory for followers to tail
+ *
+ * Records are MutationLog payloads, [long sequence][byte type][body], so a
+ * follower applies them exactly as startup replay applies the write-ahead
+ * log. The log is a ring of a fixed number of records: a follower that falls
+ * further behind than that is sent a full copy of the store instead. Each
+ * leader run has a random ID, so a follower reconnecting to a restarted
+ * leader, whose sequences start over, knows its position is meaningless.
+ *
+ * The log is the leader store's WriteListener, so followers receive each
+ * user's writes in the order the store applied them. A write is appended
+ * only once it is applied, so any sequence read from the log covers writes
+ * already visible in the store, which is what lets a follower start from a
+ * fuzzy copy of the store and the records after that sequence.
+ */
+public class ReplicationLog implements ReplicationRun, WriteListener {
+
+    private final long runId = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+    private final byte[][] ring;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+    // Guarded by lock
+    private long lastSequence;
+
+    /**
+     * @param capacity number of most recent records kept for followers
+     */
+    public ReplicationLog(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Replication log capacity must be positive: " + capacity);
+        }
+        this.ring = new byte[capacity][];
+    }
+
+    @Override
+    public long runId() {
+        return runId;
+    }
+
+    @Override
+    public void put(User user) {
+        append(MutationLog.PUT, UserCodec.encode(user));
+    }
+
+    @Override
+    public void delete(long id) {
+        append(MutationLog.DELETE, MutationLog.encodeDelete(id));
+    }
+
+    @Override
+    public void reset(Collection<User> seed) {
+        append(MutationLog.RESET, MutationLog.encodeReset(seed));
+    }
+
+    /**
+     * Add a record; called by the store after the write is applied.
+     * @return its sequence number
+     */
+    public long append(byte type, byte[] body) {
+        byte[] record = ByteBuffer.allocate(Long.BYTES + 1 + body.length)
+                .putLong(0).put(type).put(body).array();
+        lock.lock();
+        try {
+            long sequence = ++lastSequence;
+            ByteBuffer.wrap(record).putLong(0, sequence);
+            ring[(int) (sequence % ring.length)] = record;
+            appended.signalAll();
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return sequence of the most recently appended record; every write up to it is already in the store
+     */
+    public long lastSequence() {
+        lock.lock();
+        try {
+            return lastSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return true if every record after the sequence is still held, so a follower at it can catch up from the log
+     */
+    public boolean retains(long sequence) {
+        lock.lock();
+        try {
+            return sequence <= lastSequence && lastSequence - sequence <= ring.length;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Copy up to max records after the sequence into the list, waiting up to
+     * the timeout for the first one.
+     * @return false if records after the sequence were already overwritten
+     */
+    public boolean awaitAfter(long sequence, int max, long timeoutMillis, List<byte[]> records)
+            throws InterruptedException {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        lock.lock();
+        try {
+            while (lastSequence <= sequence && remaining > 0) {
+                remaining = appended.awaitNanos(remaining);
+            }
+            if (lastSequence - sequence > ring.length) {
+                return false;
+            }
+            long last = Math.min(lastSequence, sequence + max);
+            for (long next = sequence + 1; next <= last; next++) {
+                records.add(ring[(int) (next % ring.length)]);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.spectra.demo.replication;
+
+/**
+ * Frames exchanged between a follower and the leader over one TCP connection
+ *
+ * The follower opens with [int MAGIC][int VERSION][long leader run ID]
+ * [long applied sequence] and then only reads. If the run ID is the leader's
+ * and its log still holds every record after the applied sequence, the
+ * leader continues from there; otherwise it first sends a copy of the store:
+ * SNAPSHOT [long run ID], one USER [int length][UserCodec bytes] per user,
+ * then SNAPSHOT_END [long sequence][long next ID]. After that it streams
+ * RECORD [int length][MutationLog payload] frames, and a HEARTBEAT
+ * [long leader sequence] whenever nothing was written for a heartbeat
+ * interval, so a silent connection means a dead one.
+ */
+final class ReplicationProtocol {
+
+    static final int MAGIC = 0x55524550; // "UREP"
+    static final int VERSION = 1;
+
+    static final byte RECORD = 1;
+    static final byte SNAPSHOT = 2;
+    static final byte USER = 3;
+    static final byte SNAPSHOT_END = 4;
+    static final byte HEARTBEAT = 5;
+
+    static final long HEARTBEAT_MILLIS = 1000;
+    // A follower that hears nothing for this long reconnects
+    static final int READ_TIMEOUT_MILLIS = (int) HEARTBEAT_MILLIS * 5;
+
+    private ReplicationProtocol() {
+    }
+}
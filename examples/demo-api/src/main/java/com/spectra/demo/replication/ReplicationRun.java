@@ -0,0 +1,16 @@
+package com.spectra.demo.replication;
+
+/**
+ * The leader run the local user versions were assigned in
+ *
+ * Every node of a replicated deployment holds the same user at the same
+ * version, so tags built from user versions can be shared between nodes as
+ * long as they name the run: a restarted leader assigns versions afresh.
+ */
+public interface ReplicationRun {
+
+    /**
+     * @return the run ID, the same on the leader and on every follower holding a copy of its store
+     */
+    long runId();
+}
@@ -0,0 +1,181 @@
+package com.spectra.demo.replication;
+
+import com.spectra.demo.logging.EventLogger;
+import com.spectra.demo.persistence.UserCodec;
+import com.spectra.demo.repository.UserRepository;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.spectra.demo.replication.ReplicationProtocol.*;
+
+/**
+ * Leader side of replication: serves the ReplicationLog to followers over TCP
+ *
+ * One thread per follower, since a leader has a handful of them at most.
+ * Each thread sends a follower a copy of the store if it cannot resume from
+ * its position, then forwards records in batches as they are appended. A
+ * follower that falls so far behind that its next record was overwritten is
+ * disconnected; it reconnects and is sent a fresh copy.
+ */
+public class ReplicationServer implements AutoCloseable {
+
+    private static final int BATCH_RECORDS = 1024;
+
+    private final ServerSocket server;
+    private final ReplicationLog log;
+    private final UserRepository users;
+    private final EventLogger events;
+    private final Set<Socket> followers = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    /**
+     * @param users the leader's store, whose writes are appended to the log
+     */
+    public ReplicationServer(String bindAddress, int port, ReplicationLog log, UserRepository users,
+                             EventLogger events) throws IOException {
+        this.log = log;
+        this.users = users;
+        this.events = events;
+        this.server = new ServerSocket();
+        server.setReuseAddress(true);
+        server.bind(new InetSocketAddress(bindAddress, port));
+        Thread acceptor = new Thread(this::acceptLoop, "demo-replication-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        events.info("replication.leader.listening", "address", server.getLocalSocketAddress());
+    }
+
+    /**
+     * @return the port followers connect to, the one the system picked if constructed with port 0
+     */
+    public int port() {
+        return server.getLocalPort();
+    }
+
+    public int followerCount() {
+        return followers.size();
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                followers.add(socket);
+                Thread thread = new Thread(() -> serve(socket), "demo-replication-" + socket.getPort());
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    events.error("replication.leader.accept_failed", "error", e.toString());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        Object follower = socket.getRemoteSocketAddress();
+        try (Socket ignored = socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                events.warn("replication.follower.rejected", "follower", follower);
+                return;
+            }
+            long runId = in.readLong();
+            long applied = in.readLong();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+
+            long sequence;
+            if (runId == log.runId() && log.retains(applied)) {
+                sequence = applied;
+                events.info("replication.follower.resumed", "follower", follower, "sequence", sequence);
+            } else {
+                long started = System.nanoTime();
+                sequence = sendCopy(out);
+                events.info("replication.follower.copied", "follower", follower,
+                        "ms", (System.nanoTime() - started) / 1_000_000);
+            }
+
+            List<byte[]> batch = new ArrayList<>(BATCH_RECORDS);
+            while (!closed) {
+                batch.clear();
+                if (!log.awaitAfter(sequence, BATCH_RECORDS, HEARTBEAT_MILLIS, batch)) {
+                    events.warn("replication.follower.behind", "follower", follower, "sequence", sequence);
+                    return;
+                }
+                if (batch.isEmpty()) {
+                    out.writeByte(HEARTBEAT);
+                    out.writeLong(log.lastSequence());
+                }
+                for (byte[] record : batch) {
+                    out.writeByte(RECORD);
+                    out.writeInt(record.length);
+                    out.write(record);
+                }
+                sequence += batch.size();
+                out.flush();
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                events.info("replication.follower.disconnected", "follower", follower, "error", e.toString());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            followers.remove(socket);
+        }
+    }
+
+    /**
+     * Send every user, read while writes continue, and the log sequence the
+     * copy starts from. Every write up to that sequence is already in the
+     * store; replaying the later records on top converges the copy, as with
+     * a fuzzy UserSnapshot.
+     * @return the sequence records continue after
+     */
+    private long sendCopy(DataOutputStream out) throws IOException {
+        out.writeByte(SNAPSHOT);
+        out.writeLong(log.runId());
+        long sequence = log.lastSequence();
+        try {
+            users.forEach(user -> {
+                byte[] encoded = UserCodec.encode(user);
+                try {
+                    out.writeByte(USER);
+                    out.writeInt(encoded.length);
+                    out.write(encoded);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        out.writeByte(SNAPSHOT_END);
+        out.writeLong(sequence);
+        out.writeLong(users.nextId());
+        out.flush();
+        return sequence;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        server.close();
+        for (Socket follower : followers) {
+            follower.close();
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package com.spectra.demo.repository;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Concurrent map from primitive long keys to non-null values
+ *
+ * Keys are spread over lock stripes, each an open-addressing table of
+ * parallel long[] keys and Object[] values with linear probing. Lookups take
+ * no lock and never box the key: they probe under a StampedLock optimistic
+ * read and only fall back to the read lock if a writer got in the way. An
+ * entry costs two array slots instead of a node plus a boxed Long.
+ */
+public class ConcurrentLongMap<V> {
+
+    private static final int MAX_STRIPES = 64;
+    private static final int INITIAL_STRIPE_CAPACITY = 16;
+
+    private final Stripe<V>[] stripes;
+    private final int stripeMask;
+    private final LongAdder size = new LongAdder();
+
+    public ConcurrentLongMap() {
+        this(MAX_STRIPES);
+    }
+
+    /**
+     * @param stripes number of lock stripes, a power of two up to 64; one suits a map
+     *                whose writers are already serialized by an outer lock
+     */
+    @SuppressWarnings("unchecked")
+    public ConcurrentLongMap(int stripes) {
+        if (Integer.bitCount(stripes) != 1 || stripes > MAX_STRIPES) {
+            throw new IllegalArgumentException("stripes must be a power of two up to 64: " + stripes);
+        }
+        this.stripes = new Stripe[stripes];
+        this.stripeMask = stripes - 1;
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new Stripe<>();
+        }
+    }
+
+    public V get(long key) {
+        long hash = spread(key);
+        return stripeFor(hash).get(key, hash);
+    }
+
+    /**
+     * @return the previous value, or null if the key was absent
+     */
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+        long hash = spread(key);
+        Stripe<V> stripe = stripeFor(hash);
+        long stamp = stripe.lock.writeLock();
+        try {
+            V previous = stripe.put(key, hash, value);
+            if (previous == null) {
+                size.increment();
+            }
+            return previous;
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @return the removed value, or null if the key was absent
+     */
+    public V remove(long key) {
+        long hash = spread(key);
+        Stripe<V> stripe = stripeFor(hash);
+        long stamp = stripe.lock.writeLock();
+        try {
+            V removed = stripe.remove(key, hash);
+            if (removed != null) {
+                size.decrement();
+            }
+            return removed;
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Replace the value of a present key atomically with respect to other writers
+     * of that key. A null result from the function removes the entry.
+     * @return the new value, or null if the key was absent or removed
+     */
+    public V computeIfPresent(long key, Function<? super V, ? extends V> remapping) {
+        return compute(key, current -> current == null ? null : remapping.apply(current));
+    }
+
+    /**
+     * Replace the value of a key atomically with respect to other writers of
+     * that key. The function gets the current value, or null if the key is
+     * absent; a null result removes the entry.
+     * @return the new value, or null if there is none
+     */
+    public V compute(long key, Function<? super V, ? extends V> remapping) {
+        long hash = spread(key);
+        Stripe<V> stripe = stripeFor(hash);
+        long stamp = stripe.lock.writeLock();
+        try {
+            V current = stripe.getLocked(key, hash);
+            V next = remapping.apply(current);
+            if (next == null) {
+                if (current != null) {
+                    stripe.remove(key, hash);
+                    size.decrement();
+                }
+            } else if (current == null) {
+                stripe.put(key, hash, next);
+                size.increment();
+            } else if (next != current) {
+                stripe.put(key, hash, next);
+            }
+            return next;
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    public int size() {
+        return size.intValue();
+    }
+
+    public void clear() {
+        for (Stripe<V> stripe : stripes) {
+            long stamp = stripe.lock.writeLock();
+            try {
+                size.add(-stripe.count);
+                stripe.clear();
+            } finally {
+                stripe.lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * Visit every value. Each stripe is copied under its read lock and visited
+     * outside it, so a slow action never blocks writers; values written
+     * concurrently may or may not be seen.
+     */
+    public void forEachValue(Consumer<? super V> action) {
+        for (Stripe<V> stripe : stripes) {
+            for (Object value : stripe.values()) {
+                @SuppressWarnings("unchecked")
+                V typed = (V) value;
+                action.accept(typed);
+            }
+        }
+    }
+
+    public void valuesInto(List<? super V> target) {
+        forEachValue(target::add);
+    }
+
+    private Stripe<V> stripeFor(long hash) {
+        // High bits pick the stripe; the low bits pick the slot within it
+        return stripes[(int) (hash >>> 58) & stripeMask];
+    }
+
+    private static long spread(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    private static final class Table {
+        final long[] keys;
+        final Object[] values;
+
+        Table(int capacity) {
+            keys = new long[capacity];
+            values = new Object[capacity];
+        }
+    }
+
+    private static final class Stripe<V> {
+        final StampedLock lock = new StampedLock();
+        // Replaced as a whole on resize so readers always see matching arrays
+        volatile Table table = new Table(INITIAL_STRIPE_CAPACITY);
+        int count;
+
+        V get(long key, long hash) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                Object value = find(table, key, hash);
+                if (lock.validate(stamp)) {
+                    return cast(value);
+                }
+            }
+            stamp = lock.readLock();
+            try {
+                return cast(find(table, key, hash));
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        /**
+         * Lookup for callers already holding the write lock, which StampedLock does not let them re-enter.
+         */
+        V getLocked(long key, long hash) {
+            return cast(find(table, key, hash));
+        }
+
+        private static Object find(Table table, long key, long hash) {
+            int mask = table.keys.length - 1;
+            // Bounded so a probe racing a writer cannot spin; validate() discards its result
+            for (int i = 0, slot = (int) hash & mask; i <= mask; i++, slot = (slot + 1) & mask) {
+                Object value = table.values[slot];
+                if (value == null) {
+                    return null;
+                }
+                if (table.keys[slot] == key) {
+                    return value;
+                }
+            }
+            return null;
+        }
+
+        V put(long key, long hash, V value) {
+            Table current = table;
+            int mask = current.keys.length - 1;
+            int slot = (int) hash & mask;
+            while (current.values[slot] != null) {
+                if (current.keys[slot] == key) {
+                    V previous = cast(current.values[slot]);
+                    current.values[slot] = value;
+                    return previous;
+                }
+                slot = (slot + 1) & mask;
+            }
+            current.keys[slot] = key;
+            current.values[slot] = value;
+            if (++count * 2 > current.keys.length) {
+                resize(current.keys.length * 2);
+            }
+            return null;
+        }
+
+        V remove(long key, long hash) {
+            Table current = table;
+            long[] keys = current.keys;
+            Object[] values = current.values;
+            int mask = keys.length - 1;
+            int slot = (int) hash & mask;
+            while (values[slot] != null && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (values[slot] == null) {
+                return null;
+            }
+            V removed = cast(values[slot]);
+            // Backward-shift deletion keeps every remaining key reachable from its home slot
+            int hole = slot;
+            for (int next = (hole + 1) & mask; values[next] != null; next = (next + 1) & mask) {
+                int home = (int) spread(keys[next]) & mask;
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    keys[hole] = keys[next];
+                    values[hole] = values[next];
+                    hole = next;
+                }
+            }
+            values[hole] = null;
+            count--;
+            return removed;
+        }
+
+        void clear() {
+            table = new Table(INITIAL_STRIPE_CAPACITY);
+            count = 0;
+        }
+
+        Object[] values() {
+            long stamp = lock.readLock();
+            try {
+                Object[] values = table.values;
+                Object[] live = new Object[count];
+                int n = 0;
+                for (Object value : values) {
+                    if (value != null) {
+                        live[n++] = value;
+                    }
+                }
+                return n == live.length ? live : Arrays.copyOf(live, n);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        private void resize(int capacity) {
+            Table old = table;
+            Table grown = new Table(capacity);
+            int mask = capacity - 1;
+            for (int i = 0; i < old.keys.length; i++) {
+                if (old.values[i] != null) {
+                    int slot = (int) spread(old.keys[i]) & mask;
+                    while (grown.values[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    grown.keys[slot] = old.keys[i];
+                    grown.values[slot] = old.values[i];
+                }
+            }
+            table = grown;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <V> V cast(Object value) {
+            return (V) value;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.spectra.demo.repository;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interned department names encoded as small int codes
+ *
+ * There are only a handful of distinct departments, so stores keep the code
+ * instead of a String per user. Codes are never reused, which lets readers
+ * decode without locking; the flip side is that every distinct spelling ever
+ * written keeps its code, even once no user is left in it. The dictionary is
+ * meant for a bounded set of departments, and its size is published as the
+ * department.codes index gauge so unbounded growth shows up.
+ *
+ * Case-insensitive lookups go through a second map from the case-folded name
+ * to the codes of every spelling of it, so they cost one hash lookup rather
+ * than a scan over all names.
+ */
+class DepartmentDictionary {
+
+    static final int NONE = -1;
+
+    private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+    // Case-folded name -> codes of its spellings; a set is replaced, never changed, once published
+    private final Map<String, BitSet> spellings = new ConcurrentHashMap<>();
+    // Grown geometrically; slots at and past count are unused
+    private volatile String[] names = new String[8];
+    private volatile int count;
+
+    int encode(String department) {
+        if (department == null) {
+            return NONE;
+        }
+        Integer code = codes.get(department);
+        return code != null ? code : register(department);
+    }
+
+    private synchronized int register(String department) {
+        Integer existing = codes.get(department);
+        if (existing != null) {
+            return existing;
+        }
+        int code = count;
+        if (code == names.length) {
+            names = Arrays.copyOf(names, code * 2);
+        }
+        // Publish the name before the code so a reader holding the code can always decode it
+        names[code] = department;
+        count = code + 1;
+        String folded = fold(department);
+        BitSet matching = (BitSet) spellings.getOrDefault(folded, new BitSet()).clone();
+        matching.set(code);
+        spellings.put(folded, matching);
+        codes.put(department, code);
+        return code;
+    }
+
+    /**
+     * @return number of distinct names ever encoded
+     */
+    int size() {
+        return count;
+    }
+
+    String decode(int code) {
+        return code == NONE ? null : names[code];
+    }
+
+    /**
+     * @return codes of every department equal to the given name ignoring case
+     */
+    BitSet matchingIgnoreCase(String department) {
+        BitSet matching = spellings.get(fold(department));
+        // Callers get their own copy, so the shared set stays unchanged
+        return matching == null ? new BitSet() : (BitSet) matching.clone();
+    }
+
+    /**
+     * Fold case one code point at a time the way String.equalsIgnoreCase
+     * compares, so two names fold alike exactly when equalsIgnoreCase accepts them.
+     */
+    private static String fold(String name) {
+        StringBuilder folded = new StringBuilder(name.length());
+        name.codePoints().forEach(c -> folded.appendCodePoint(Character.toLowerCase(Character.toUpperCase(c))));
+        return folded.toString();
+    }
+}
@@ -0,0 +1,45 @@
+package com.spectra.demo.repository;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Store version of the latest write to each department code
+ *
+ * Lets a cached department listing survive writes to other departments. A
+ * lookup covers the same codes as the department query itself (see
+ * DepartmentDictionary.matchingIgnoreCase), so every spelling it matches is
+ * accounted for.
+ */
+class DepartmentVersions {
+
+    private final Map<Integer, Long> versions = new ConcurrentHashMap<>();
+    // Version of the last reset, which every department has seen
+    private volatile long floor;
+
+    /**
+     * Record a write that added or removed a user of the department.
+     */
+    void touch(int code, long storeVersion) {
+        if (code != DepartmentDictionary.NONE) {
+            versions.merge(code, storeVersion, Math::max);
+        }
+    }
+
+    /**
+     * Record a write that may have changed every department.
+     */
+    synchronized void touchAll(long storeVersion) {
+        // Older per-department entries are simply outranked; clearing them could drop a concurrent touch
+        floor = Math.max(floor, storeVersion);
+    }
+
+    long get(BitSet codes) {
+        long version = floor;
+        for (int code = codes.nextSetBit(0); code >= 0; code = codes.nextSetBit(code + 1)) {
+            version = Math.max(version, versions.getOrDefault(code, 0L));
+        }
+        return version;
+    }
+}
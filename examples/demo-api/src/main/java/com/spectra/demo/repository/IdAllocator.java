@@ -0,0 +1,123 @@
+package com.spectra.demo.repository;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out user IDs in blocks, so concurrent creates do not all increment one counter
+ *
+ * Each slot owns a block of blockSize IDs taken from a shared limit and
+ * allocates from it alone; the shared limit is only touched once per block.
+ * IDs are unique but no longer dense or in creation order across slots, and
+ * the unused rest of a block is skipped once the block is dropped. With a
+ * block size of 1 every ID comes straight from the shared counter, as
+ * before. Resetting the next ID drops every block, so no ID claimed before
+ * the reset is handed out again once the counter climbs back up to it.
+ * Advancing it only raises a floor that blocks skip up to, so replaying or
+ * following a stream of restored users, which advances once per user, keeps
+ * blocks that lie wholly above it.
+ */
+final class IdAllocator {
+
+    private static final int MAX_SLOTS = 64;
+
+    private final int blockSize;
+    private final Block[] blocks;
+    private final int slotMask;
+    // First ID no block has claimed: every ID allocated so far is below it
+    private final AtomicLong limit = new AtomicLong(1);
+    // Lowest ID a block may still hand out; raised by advance
+    private final AtomicLong floor = new AtomicLong(1);
+    // Bumped to drop every block claimed before a reset
+    private final AtomicLong epoch = new AtomicLong();
+
+    /**
+     * @param slots number of independent blocks, rounded up to a power of two and capped at 64
+     */
+    IdAllocator(int blockSize, int slots) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("ID block size must be positive: " + blockSize);
+        }
+        this.blockSize = blockSize;
+        int count = blockSize == 1 || slots <= 1 ? 1 : Math.min(MAX_SLOTS, Integer.highestOneBit(slots - 1) << 1);
+        this.blocks = new Block[count];
+        for (int i = 0; i < count; i++) {
+            blocks[i] = new Block();
+        }
+        this.slotMask = count - 1;
+    }
+
+    /**
+     * Slots for callers that pick theirs by thread: a few per processor, so
+     * concurrent request threads rarely share one.
+     */
+    static int slotsPerProcessor() {
+        return 4 * Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Allocate from the block of the current thread's slot.
+     */
+    long next() {
+        return next((int) Thread.currentThread().getId());
+    }
+
+    /**
+     * Allocate from the block of the given slot, e.g. a shard already locked by the caller.
+     */
+    long next(int slot) {
+        if (blockSize == 1) {
+            return limit.getAndIncrement();
+        }
+        Block block = blocks[slot & slotMask];
+        synchronized (block) {
+            long current = epoch.get();
+            long min = floor.get();
+            if (block.next == block.end || block.end <= min || block.epoch != current) {
+                // advance raises the limit before the floor, so a block claimed now lies above min
+                block.next = limit.getAndAdd(blockSize);
+                block.end = block.next + blockSize;
+                block.epoch = current;
+            } else if (block.next < min) {
+                block.next = min;
+            }
+            return block.next++;
+        }
+    }
+
+    /**
+     * @return an ID no allocation has reached yet; everything allocated is below it
+     */
+    long limit() {
+        return limit.get();
+    }
+
+    /**
+     * Allocate from the given ID onwards, even if higher IDs were allocated before.
+     */
+    void reset(long nextId) {
+        floor.set(nextId);
+        limit.set(nextId);
+        epoch.incrementAndGet();
+    }
+
+    /**
+     * Make sure IDs allocated afterwards are at least the given one.
+     */
+    void advance(long nextId) {
+        if (limit.get() < nextId) {
+            limit.accumulateAndGet(nextId, Math::max);
+        }
+        if (floor.get() < nextId) {
+            floor.accumulateAndGet(nextId, Math::max);
+        }
+    }
+
+    private static final class Block {
+        long next;
+        long end;
+        long epoch = -1;
+        // Keeps two slots' hot fields off one cache line when the blocks are laid out next to each other
+        @SuppressWarnings("unused")
+        long p1, p2, p3, p4, p5;
+    }
+}
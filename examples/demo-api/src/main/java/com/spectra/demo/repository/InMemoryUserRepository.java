@@ -0,0 +1,406 @@
+package com.spectra.demo.repository;
+
+import com.spectra.demo.model.BatchOperation;
+import com.spectra.demo.model.User;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Default user store backed by a primitive-keyed concurrent map
+ *
+ * Secondary indexes for email, department and ID order are kept in step with
+ * the primary map so that no operation scans the whole table. Users are held
+ * as immutable UserRecords; every read materializes fresh User objects.
+ * Departments are dictionary codes, so a department lookup finds the codes
+ * matching the name once and then compares ints.
+ *
+ * Writes share a lock that only reset and batches take exclusively, so a
+ * reset never lands between the steps of a create or delete and leaves a
+ * user behind whose email or ID it has already handed back, and no write
+ * lands between the operations of a batch. Reads take no lock. The
+ * write listener is called under the map's lock for the user's ID, which
+ * every write to that ID holds while it replaces the stored record.
+ */
+public class InMemoryUserRepository implements UserRepository {
+
+    private final ConcurrentLongMap<UserRecord> users = new ConcurrentLongMap<>();
+    // Department name <-> code, so records hold an int instead of a String per user
+    private final DepartmentDictionary departments = new DepartmentDictionary();
+    // Unique email -> id index, kept in step with users so duplicate checks are O(1)
+    private final Map<String, Long> emailIndex = new ConcurrentHashMap<>();
+    // Department code -> ids index, so department lookups scale with the result size
+    private final Map<Integer, Set<Long>> departmentIndex = new ConcurrentHashMap<>();
+    // Sorted view of the ids, so a page after a cursor costs O(log n + page)
+    private final NavigableSet<Long> sortedIds = new ConcurrentSkipListSet<>();
+    private final IdAllocator ids;
+    private final AtomicLong versionSequence = new AtomicLong();
+    private final AtomicLong storeVersion = new AtomicLong();
+    private final DepartmentVersions departmentVersions = new DepartmentVersions();
+    // Read-locked by every single write, write-locked by reset and batches
+    private final StampedLock resetLock = new StampedLock();
+    private volatile WriteListener listener = WriteListener.NONE;
+
+    public InMemoryUserRepository() {
+        this(1);
+    }
+
+    /**
+     * @param idBlockSize IDs each request thread claims at a time; 1 allocates every ID from one shared counter
+     */
+    public InMemoryUserRepository(int idBlockSize) {
+        this.ids = new IdAllocator(idBlockSize, IdAllocator.slotsPerProcessor());
+    }
+
+    @Override
+    public Optional<User> findById(long id) {
+        UserRecord record = users.get(id);
+        return record == null ? Optional.empty() : Optional.of(record.toUser(departments));
+    }
+
+    @Override
+    public UserPage findPage(Long after, int limit) {
+        NavigableSet<Long> remaining = after == null ? sortedIds : sortedIds.tailSet(after, false);
+        List<User> page = new ArrayList<>(Math.min(limit, 128));
+        Long last = null;
+        for (Long userId : remaining) {
+            UserRecord record = users.get(userId);
+            if (record == null) {
+                continue;
+            }
+            page.add(record.toUser(departments));
+            last = userId;
+            if (page.size() == limit) {
+                break;
+            }
+        }
+        boolean more = last != null && page.size() == limit && sortedIds.higher(last) != null;
+        return new UserPage(page, more ? last : null);
+    }
+
+    @Override
+    public List<User> findAll() {
+        List<User> all = new ArrayList<>(users.size());
+        users.forEachValue(record -> all.add(record.toUser(departments)));
+        return all;
+    }
+
+    @Override
+    public List<User> findByDepartment(String department) {
+        // Every spelling of the name that equalsIgnoreCase accepts, usually just one
+        BitSet codes = departments.matchingIgnoreCase(department);
+        List<User> departmentUsers = new ArrayList<>();
+        for (int code = codes.nextSetBit(0); code >= 0; code = codes.nextSetBit(code + 1)) {
+            Set<Long> ids = departmentIndex.getOrDefault(code, Collections.emptySet());
+            for (Long userId : ids) {
+                // The index may briefly lead the map while a concurrent write lands
+                UserRecord record = users.get(userId);
+                if (record != null && record.departmentCode == code) {
+                    departmentUsers.add(record.toUser(departments));
+                }
+            }
+        }
+        return departmentUsers;
+    }
+
+    @Override
+    public int count() {
+        return users.size();
+    }
+
+    @Override
+    public long version() {
+        return storeVersion.get();
+    }
+
+    @Override
+    public long departmentVersion(String department) {
+        return departmentVersions.get(departments.matchingIgnoreCase(department));
+    }
+
+    @Override
+    public void indexSizes(BiConsumer<String, LongSupplier> gauge) {
+        gauge.accept("email", emailIndex::size);
+        gauge.accept("department", departmentIndex::size);
+        gauge.accept("department.codes", departments::size);
+    }
+
+    @Override
+    public void forEach(Consumer<? super User> action) {
+        // Weakly consistent iteration: at most one stripe is copied at a time
+        users.forEachValue(record -> action.accept(record.toUser(departments)));
+    }
+
+    @Override
+    public WriteResult create(User user) {
+        long stamp = resetLock.readLock();
+        try {
+            return createLocked(user);
+        } finally {
+            resetLock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public WriteResult update(long id, User user, long expectedVersion) {
+        long stamp = resetLock.readLock();
+        try {
+            return updateLocked(id, user, expectedVersion);
+        } finally {
+            resetLock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public WriteResult delete(long id) {
+        long stamp = resetLock.readLock();
+        try {
+            return deleteLocked(id);
+        } finally {
+            resetLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Takes the reset lock exclusively for the whole batch, so no other write
+     * lands between its operations. Reads go on meanwhile.
+     */
+    @Override
+    public List<WriteResult> applyBatch(List<BatchOperation> operations) {
+        long stamp = resetLock.writeLock();
+        try {
+            List<WriteResult> results = new ArrayList<>(operations.size());
+            for (BatchOperation operation : operations) {
+                switch (operation.getOp()) {
+                    case CREATE:
+                        results.add(createLocked(operation.getUser()));
+                        break;
+                    case UPDATE:
+                        results.add(updateLocked(operation.getId(), operation.getUser(), ANY_VERSION));
+                        break;
+                    default:
+                        results.add(deleteLocked(operation.getId()));
+                }
+            }
+            return results;
+        } finally {
+            resetLock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void restore(User user) {
+        long stamp = resetLock.readLock();
+        try {
+            long id = user.getId();
+            UserRecord record = UserRecord.of(id, user.getVersion(), user, departments.encode(user.getDepartment()));
+            ids.advance(id + 1);
+            UserRecord[] replaced = new UserRecord[1];
+            users.compute(id, existing -> {
+                replaced[0] = existing;
+                listener.put(user);
+                return record;
+            });
+            UserRecord previous = replaced[0];
+            if (previous != null) {
+                emailIndex.remove(previous.email, id);
+                unindexDepartment(id, previous.departmentCode);
+            }
+            emailIndex.put(record.email, id);
+            sortedIds.add(id);
+            indexDepartment(id, record.departmentCode);
+            versionSequence.accumulateAndGet(record.version, Math::max);
+            long version = storeVersion.incrementAndGet();
+            if (previous != null) {
+                departmentVersions.touch(previous.departmentCode, version);
+            }
+            departmentVersions.touch(record.departmentCode, version);
+        } finally {
+            resetLock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void reset(Collection<User> seed) {
+        long stamp = resetLock.writeLock();
+        try {
+            users.clear();
+            sortedIds.clear();
+            emailIndex.clear();
+            departmentIndex.clear();
+
+            long maxId = 0;
+            for (User user : seed) {
+                stampSeedVersion(user);
+                Long id = user.getId();
+                UserRecord record = UserRecord.of(id, user.getVersion(), user, departments.encode(user.getDepartment()));
+                users.put(id, record);
+                sortedIds.add(id);
+                emailIndex.put(record.email, id);
+                indexDepartment(id, record.departmentCode);
+                maxId = Math.max(maxId, id);
+            }
+            ids.reset(maxId + 1);
+            departmentVersions.touchAll(storeVersion.incrementAndGet());
+            listener.reset(seed);
+        } finally {
+            resetLock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public long nextId() {
+        return ids.limit();
+    }
+
+    @Override
+    public void advanceNextId(long nextId) {
+        ids.advance(nextId);
+    }
+
+    @Override
+    public void addWriteListener(WriteListener added) {
+        listener = listener.andThen(added);
+    }
+
+    // The *Locked writes run with resetLock held: read-locked for a single write, write-locked for a batch
+    private WriteResult createLocked(User user) {
+        // Reserve the email atomically; the ID is only allocated when the email is free
+        Long[] allocated = new Long[1];
+        emailIndex.computeIfAbsent(user.getEmail(), email -> allocated[0] = ids.next());
+        if (allocated[0] == null) {
+            return WriteResult.duplicateEmail();
+        }
+
+        // One box shared by the email, ID-order and department indexes
+        Long id = allocated[0];
+        UserRecord record = UserRecord.of(id, versionSequence.incrementAndGet(), user, departments.encode(user.getDepartment()));
+        user.setId(id);
+        user.setVersion(record.version);
+        User created = record.toUser(departments);
+        // Under the ID's lock, so a delete of the new ID cannot be reported before the create
+        users.compute(id, absent -> {
+            listener.put(created);
+            return record;
+        });
+        sortedIds.add(id);
+        indexDepartment(id, record.departmentCode);
+        departmentVersions.touch(record.departmentCode, storeVersion.incrementAndGet());
+        return WriteResult.ok(created);
+    }
+
+    private WriteResult updateLocked(long id, User user, long expectedVersion) {
+        // Check the version, swap the email reservation and replace the stored user under
+        // the map's stripe lock, so a concurrent write to the same ID cannot interleave
+        boolean[] conflict = new boolean[1];
+        boolean[] duplicate = new boolean[1];
+        int department = departments.encode(user.getDepartment());
+        int[] previousDepartment = new int[1];
+        User[] written = new User[1];
+        UserRecord updated = users.computeIfPresent(id, existing -> {
+            if (expectedVersion != ANY_VERSION && existing.version != expectedVersion) {
+                conflict[0] = true;
+                return existing;
+            }
+            if (!swapEmail(id, existing.email, user.getEmail())) {
+                duplicate[0] = true;
+                return existing;
+            }
+            previousDepartment[0] = existing.departmentCode;
+            unindexDepartment(id, existing.departmentCode);
+            indexDepartment(id, department);
+            UserRecord next = UserRecord.of(id, versionSequence.incrementAndGet(), user, department);
+            written[0] = next.toUser(departments);
+            listener.put(written[0]);
+            return next;
+        });
+
+        if (updated == null) {
+            return WriteResult.notFound();
+        }
+        if (conflict[0]) {
+            return WriteResult.versionConflict(updated.toUser(departments));
+        }
+        if (duplicate[0]) {
+            return WriteResult.duplicateEmail();
+        }
+        long version = storeVersion.incrementAndGet();
+        departmentVersions.touch(previousDepartment[0], version);
+        departmentVersions.touch(updated.departmentCode, version);
+        return WriteResult.ok(written[0]);
+    }
+
+    private WriteResult deleteLocked(long id) {
+        UserRecord[] deleted = new UserRecord[1];
+        users.computeIfPresent(id, existing -> {
+            deleted[0] = existing;
+            listener.delete(id);
+            return null;
+        });
+        UserRecord removed = deleted[0];
+        if (removed == null) {
+            return WriteResult.notFound();
+        }
+        sortedIds.remove(id);
+        emailIndex.remove(removed.email, id);
+        unindexDepartment(id, removed.departmentCode);
+        departmentVersions.touch(removed.departmentCode, storeVersion.incrementAndGet());
+        return WriteResult.ok(removed.toUser(departments));
+    }
+
+    /**
+     * New seed users get fresh versions, so no earlier version of a reused seed
+     * ID is ever repeated; replayed ones keep the version they were logged with.
+     */
+    private void stampSeedVersion(User user) {
+        if (user.getVersion() == 0) {
+            user.setVersion(versionSequence.incrementAndGet());
+        } else {
+            versionSequence.accumulateAndGet(user.getVersion(), Math::max);
+        }
+    }
+
+    /**
+     * Move the email reservation of a user from its old to its new address.
+     * @return false if the new address is already owned by another user
+     */
+    private boolean swapEmail(Long id, String oldEmail, String newEmail) {
+        if (newEmail.equals(oldEmail)) {
+            return true;
+        }
+        Long owner = emailIndex.putIfAbsent(newEmail, id);
+        if (owner != null && !owner.equals(id)) {
+            return false;
+        }
+        emailIndex.remove(oldEmail, id);
+        return true;
+    }
+
+    private void indexDepartment(Long id, int department) {
+        if (department == DepartmentDictionary.NONE) {
+            return;
+        }
+        departmentIndex.compute(department, (code, ids) -> {
+            Set<Long> members = ids != null ? ids : ConcurrentHashMap.newKeySet();
+            members.add(id);
+            return members;
+        });
+    }
+
+    private void unindexDepartment(Long id, int department) {
+        if (department == DepartmentDictionary.NONE) {
+            return;
+        }
+        // Drop the bucket once empty so the index only holds live departments
+        departmentIndex.computeIfPresent(department, (code, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+}
@@ -0,0 +1,690 @@
+package com.spectra.demo.repository;
+
+import com.spectra.demo.model.BatchOperation;
+import com.spectra.demo.model.User;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Columnar user store kept outside the Java heap
+ *
+ * Each field lives in its own direct ByteBuffer column indexed by row, with
+ * names and emails UTF-8 encoded in a shared string arena and departments
+ * reduced to dictionary codes. The heap only holds the buffers themselves, so
+ * millions of users add nothing for the GC to trace; User objects are
+ * materialized just for the rows being returned.
+ *
+ * IDs are allocated in increasing order and rows are only ever appended, so
+ * the ID column stays sorted: lookups and page cursors binary search it rather
+ * than maintaining a separate index. Deleted rows are tombstoned and reclaimed
+ * together with stale string bytes by an occasional compaction. Email
+ * uniqueness is enforced through an off-heap open-addressing table of email
+ * hashes. A read-write lock guards the whole store; the write listener is
+ * called under its write lock.
+ */
+public class OffHeapUserRepository implements UserRepository {
+
+    private static final int INITIAL_ROWS = 1024;
+    private static final int INITIAL_STRING_BYTES = 64 * 1024;
+    private static final int COMPACTION_THRESHOLD = 4096;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Lock read = lock.readLock();
+    private final Lock write = lock.writeLock();
+    private final DepartmentDictionary dictionary = new DepartmentDictionary();
+
+    // Row columns
+    private ByteBuffer ids;
+    private ByteBuffer ages;
+    private ByteBuffer versions;
+    private ByteBuffer departments;
+    // String references: arena offset in the high 32 bits, byte length in the low 32 bits
+    private ByteBuffer names;
+    private ByteBuffer emails;
+    private ByteBuffer live;
+    private int rowCapacity;
+    private int rows;
+    private int liveRows;
+
+    private ByteBuffer strings;
+    private int stringsEnd;
+    private int garbageBytes;
+
+    // Email hash table: parallel hash and row+1 columns, 0 marking an empty slot
+    private ByteBuffer emailHashes;
+    private ByteBuffer emailRows;
+    private int emailMask;
+
+    private long nextId = 1;
+    private long versionSequence;
+    // Written under the write lock once a write is complete; read without the lock
+    private volatile long storeVersion;
+    private final DepartmentVersions departmentVersions = new DepartmentVersions();
+    private volatile WriteListener listener = WriteListener.NONE;
+
+    public OffHeapUserRepository() {
+        allocateRows(INITIAL_ROWS);
+        strings = allocate(INITIAL_STRING_BYTES);
+        allocateEmailTable(INITIAL_ROWS * 2);
+    }
+
+    @Override
+    public Optional<User> findById(long id) {
+        read.lock();
+        try {
+            int row = rowOf(id);
+            return row < 0 ? Optional.empty() : Optional.of(materialize(row));
+        } finally {
+            read.unlock();
+        }
+    }
+
+    @Override
+    public UserPage findPage(Long after, int limit) {
+        read.lock();
+        try {
+            int row = after == null ? 0 : firstRowAfter(after);
+            List<User> page = new ArrayList<>(Math.min(limit, 128));
+            for (; row < rows && page.size() < limit; row++) {
+                if (isLive(row)) {
+                    page.add(materialize(row));
+                }
+            }
+            for (; row < rows; row++) {
+                if (isLive(row)) {
+                    return new UserPage(page, page.get(page.size() - 1).getId());
+                }
+            }
+            return new UserPage(page, null);
+        } finally {
+            read.unlock();
+        }
+    }
+
+    @Override
+    public List<User> findAll() {
+        read.lock();
+        try {
+            List<User> all = new ArrayList<>(liveRows);
+            for (int row = 0; row < rows; row++) {
+                if (isLive(row)) {
+                    all.add(materialize(row));
+                }
+            }
+            return all;
+        } finally {
+            read.unlock();
+        }
+    }
+
+    @Override
+    public List<User> findByDepartment(String department) {
+        BitSet codes = dictionary.matchingIgnoreCase(department);
+        List<User> matches = new ArrayList<>();
+        if (codes.isEmpty()) {
+            return matches;
+        }
+        read.lock();
+        try {
+            // Sequential scan of a packed int column; only matching rows are materialized
+            for (int row = 0; row < rows; row++) {
+                int code = departments.getInt(row * Integer.BYTES);
+                if (code != DepartmentDictionary.NONE && codes.get(code) && isLive(row)) {
+                    matches.add(materialize(row));
+                }
+            }
+            return matches;
+        } finally {
+            read.unlock();
+        }
+    }
+
+    @Override
+    public int count() {
+        read.lock();
+        try {
+            return liveRows;
+        } finally {
+            read.unlock();
+        }
+    }
+
+    @Override
+    public long version() {
+        return storeVersion;
+    }
+
+    @Override
+    public long departmentVersion(String department) {
+        return departmentVersions.get(dictionary.matchingIgnoreCase(department));
+    }
+
+    @Override
+    public void indexSizes(BiConsumer<String, LongSupplier> gauge) {
+        // Plain fields read without the lock: a scrape may see them a write behind
+        gauge.accept("email.slots", () -> emailMask + 1L);
+        gauge.accept("rows", () -> rows);
+        gauge.accept("string.bytes", () -> stringsEnd);
+        gauge.accept("string.garbage.bytes", () -> garbageBytes);
+        gauge.accept("department.codes", dictionary::size);
+    }
+
+    @Override
+    public WriteResult create(User user) {
+        byte[] email = utf8(user.getEmail());
+        long hash = hash(email);
+        write.lock();
+        try {
+            if (findEmail(hash, email) >= 0) {
+                return WriteResult.duplicateEmail();
+            }
+            long id = nextId++;
+            user.setVersion(++versionSequence);
+            append(id, user, email, hash);
+            user.setId(id);
+            departmentVersions.touch(dictionary.encode(user.getDepartment()), ++storeVersion);
+            listener.put(user);
+            return WriteResult.ok(user);
+        } finally {
+            write.unlock();
+        }
+    }
+
+    @Override
+    public WriteResult update(long id, User user, long expectedVersion) {
+        byte[] email = utf8(user.getEmail());
+        long hash = hash(email);
+        write.lock();
+        try {
+            int row = rowOf(id);
+            if (row < 0) {
+                return WriteResult.notFound();
+            }
+            if (expectedVersion != ANY_VERSION && versions.getLong(row * Long.BYTES) != expectedVersion) {
+                return WriteResult.versionConflict(materialize(row));
+            }
+            int owner = findEmail(hash, email);
+            if (owner >= 0 && owner != row) {
+                return WriteResult.duplicateEmail();
+            }
+            int previousDepartment = departments.getInt(row * Integer.BYTES);
+            user.setVersion(++versionSequence);
+            overwrite(row, user, email, hash);
+            user.setId(id);
+            long version = ++storeVersion;
+            departmentVersions.touch(previousDepartment, version);
+            departmentVersions.touch(departments.getInt(row * Integer.BYTES), version);
+            listener.put(user);
+            return WriteResult.ok(user);
+        } finally {
+            write.unlock();
+        }
+    }
+
+    @Override
+    public WriteResult delete(long id) {
+        write.lock();
+        try {
+            int row = rowOf(id);
+            if (row < 0) {
+                return WriteResult.notFound();
+            }
+            User removed = materialize(row);
+            int department = departments.getInt(row * Integer.BYTES);
+            removeEmail(hashAt(emails, row), row);
+            discard(names, row);
+            discard(emails, row);
+            live.put(row, (byte) 0);
+            liveRows--;
+            compactIfWasteful();
+            departmentVersions.touch(department, ++storeVersion);
+            listener.delete(id);
+            return WriteResult.ok(removed);
+        } finally {
+            write.unlock();
+        }
+    }
+
+    @Override
+    public List<WriteResult> applyBatch(List<BatchOperation> operations) {
+        // The write lock is reentrant, so the whole batch pays for one acquisition
+        write.lock();
+        try {
+            return UserRepository.super.applyBatch(operations);
+        } finally {
+            write.unlock();
+        }
+    }
+
+    @Override
+    public void restore(User user) {
+        long id = user.getId();
+        byte[] email = utf8(user.getEmail());
+        long hash = hash(email);
+        write.lock();
+        try {
+            nextId = Math.max(nextId, id + 1);
+            versionSequence = Math.max(versionSequence, user.getVersion());
+            long version = ++storeVersion;
+            departmentVersions.touch(dictionary.encode(user.getDepartment()), version);
+            int row = firstRowAfter(id - 1);
+            if (row < rows && ids.getLong(row * Long.BYTES) == id) {
+                if (isLive(row)) {
+                    departmentVersions.touch(departments.getInt(row * Integer.BYTES), version);
+                    overwrite(row, user, email, hash);
+                } else {
+                    fill(row, id, user, email, hash);
+                }
+            } else {
+                append(id, user, email, hash);
+                if (row < rows - 1) {
+                    // Rare out-of-order insert: rotate the new row into place to keep IDs sorted
+                    removeEmail(hash, rows - 1);
+                    moveLastRowTo(row);
+                    insertEmail(hash, row);
+                }
+            }
+            listener.put(user);
+        } finally {
+            write.unlock();
+        }
+    }
+
+    @Override
+    public void reset(Collection<User> seed) {
+        List<User> ordered = new ArrayList<>(seed);
+        ordered.sort(Comparator.comparing(User::getId));
+        write.lock();
+        try {
+            allocateRows(Math.max(INITIAL_ROWS, ordered.size()));
+            strings = allocate(INITIAL_STRING_BYTES);
+            stringsEnd = 0;
+            garbageBytes = 0;
+            rows = 0;
+            liveRows = 0;
+            allocateEmailTable(INITIAL_ROWS * 2);
+            long maxId = 0;
+            for (User user : ordered) {
+                // Fresh versions for new seed users, so a reused seed ID never repeats an earlier version
+                if (user.getVersion() == 0) {
+                    user.setVersion(++versionSequence);
+                } else {
+                    versionSequence = Math.max(versionSequence, user.getVersion());
+                }
+                byte[] email = utf8(user.getEmail());
+                append(user.getId(), user, email, hash(email));
+                maxId = user.getId();
+            }
+            nextId = maxId + 1;
+            departmentVersions.touchAll(++storeVersion);
+            listener.reset(seed);
+        } finally {
+            write.unlock();
+        }
+    }
+
+    @Override
+    public long nextId() {
+        read.lock();
+        try {
+            return nextId;
+        } finally {
+            read.unlock();
+        }
+    }
+
+    @Override
+    public void advanceNextId(long nextId) {
+        write.lock();
+        try {
+            this.nextId = Math.max(this.nextId, nextId);
+        } finally {
+            write.unlock();
+        }
+    }
+
+    @Override
+    public void addWriteListener(WriteListener added) {
+        listener = listener.andThen(added);
+    }
+
+    // ---- rows -------------------------------------------------------------------------------
+
+    private void append(long id, User user, byte[] email, long emailHash) {
+        if (rows == rowCapacity) {
+            growRows();
+        }
+        fill(rows++, id, user, email, emailHash);
+    }
+
+    /**
+     * Write a user into an unused row: a fresh one or a tombstone with the same ID.
+     */
+    private void fill(int row, long id, User user, byte[] email, long emailHash) {
+        ids.putLong(row * Long.BYTES, id);
+        versions.putLong(row * Long.BYTES, user.getVersion());
+        ages.putInt(row * Integer.BYTES, user.getAge() == null ? UserRecord.ABSENT_AGE : user.getAge());
+        departments.putInt(row * Integer.BYTES, dictionary.encode(user.getDepartment()));
+        names.putLong(row * Long.BYTES, appendString(utf8(user.getName())));
+        emails.putLong(row * Long.BYTES, appendString(email));
+        live.put(row, (byte) 1);
+        liveRows++;
+        if (liveRows * 2 > emailMask + 1) {
+            rebuildEmailTable((emailMask + 1) * 2);
+        } else {
+            insertEmail(emailHash, row);
+        }
+    }
+
+    /**
+     * Replace the fields of a live row; the caller has already checked email uniqueness.
+     */
+    private void overwrite(int row, User user, byte[] email, long emailHash) {
+        if (!stringEquals(emails.getLong(row * Long.BYTES), email)) {
+            removeEmail(hashAt(emails, row), row);
+            discard(emails, row);
+            emails.putLong(row * Long.BYTES, appendString(email));
+            insertEmail(emailHash, row);
+        }
+        discard(names, row);
+        names.putLong(row * Long.BYTES, appendString(utf8(user.getName())));
+        versions.putLong(row * Long.BYTES, user.getVersion());
+        ages.putInt(row * Integer.BYTES, user.getAge() == null ? UserRecord.ABSENT_AGE : user.getAge());
+        departments.putInt(row * Integer.BYTES, dictionary.encode(user.getDepartment()));
+    }
+
+    /**
+     * Move the last row to the given position, shifting the rows in between up
+     * by one. The email slots of the shifted rows follow them; the caller takes
+     * the moved row's email out of the table first and puts it back after.
+     */
+    private void moveLastRowTo(int position) {
+        int last = rows - 1;
+        long id = ids.getLong(last * Long.BYTES);
+        long version = versions.getLong(last * Long.BYTES);
+        int age = ages.getInt(last * Integer.BYTES);
+        int department = departments.getInt(last * Integer.BYTES);
+        long name = names.getLong(last * Long.BYTES);
+        long email = emails.getLong(last * Long.BYTES);
+        byte alive = live.get(last);
+        // From the top down, so the row number each shifted row moves to is already free in the email table
+        for (int row = last; row > position; row--) {
+            if (live.get(row - 1) != 0) {
+                renumberEmail(hashAt(emails, row - 1), row - 1, row);
+            }
+            ids.putLong(row * Long.BYTES, ids.getLong((row - 1) * Long.BYTES));
+            versions.putLong(row * Long.BYTES, versions.getLong((row - 1) * Long.BYTES));
+            ages.putInt(row * Integer.BYTES, ages.getInt((row - 1) * Integer.BYTES));
+            departments.putInt(row * Integer.BYTES, departments.getInt((row - 1) * Integer.BYTES));
+            names.putLong(row * Long.BYTES, names.getLong((row - 1) * Long.BYTES));
+            emails.putLong(row * Long.BYTES, emails.getLong((row - 1) * Long.BYTES));
+            live.put(row, live.get(row - 1));
+        }
+        ids.putLong(position * Long.BYTES, id);
+        versions.putLong(position * Long.BYTES, version);
+        ages.putInt(position * Integer.BYTES, age);
+        departments.putInt(position * Integer.BYTES, department);
+        names.putLong(position * Long.BYTES, name);
+        emails.putLong(position * Long.BYTES, email);
+        live.put(position, alive);
+    }
+
+    private User materialize(int row) {
+        int age = ages.getInt(row * Integer.BYTES);
+        User user = new User(ids.getLong(row * Long.BYTES),
+                readString(names.getLong(row * Long.BYTES)),
+                readString(emails.getLong(row * Long.BYTES)),
+                age == UserRecord.ABSENT_AGE ? null : age,
+                dictionary.decode(departments.getInt(row * Integer.BYTES)));
+        user.setVersion(versions.getLong(row * Long.BYTES));
+        return user;
+    }
+
+    private boolean isLive(int row) {
+        return live.get(row) != 0;
+    }
+
+    /**
+     * @return row holding the live user with this ID, or -1
+     */
+    private int rowOf(long id) {
+        int row = firstRowAfter(id - 1);
+        return row < rows && ids.getLong(row * Long.BYTES) == id && isLive(row) ? row : -1;
+    }
+
+    /**
+     * @return first row whose ID is greater than the given one (tombstones included)
+     */
+    private int firstRowAfter(long id) {
+        int low = 0;
+        int high = rows;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ids.getLong(mid * Long.BYTES) <= id) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void allocateRows(int capacity) {
+        rowCapacity = capacity;
+        ids = allocate(capacity * Long.BYTES);
+        versions = allocate(capacity * Long.BYTES);
+        ages = allocate(capacity * Integer.BYTES);
+        departments = allocate(capacity * Integer.BYTES);
+        names = allocate(capacity * Long.BYTES);
+        emails = allocate(capacity * Long.BYTES);
+        live = allocate(capacity);
+    }
+
+    private void growRows() {
+        int capacity = Math.multiplyExact(rowCapacity, 2);
+        ids = copy(ids, capacity * Long.BYTES);
+        versions = copy(versions, capacity * Long.BYTES);
+        ages = copy(ages, capacity * Integer.BYTES);
+        departments = copy(departments, capacity * Integer.BYTES);
+        names = copy(names, capacity * Long.BYTES);
+        emails = copy(emails, capacity * Long.BYTES);
+        live = copy(live, capacity);
+        rowCapacity = capacity;
+    }
+
+    /**
+     * Reclaim tombstoned rows and stale string bytes once they outweigh live data.
+     * Rows keep their relative order, so the ID column stays sorted.
+     */
+    private void compactIfWasteful() {
+        int deadRows = rows - liveRows;
+        boolean rowsWasteful = deadRows > COMPACTION_THRESHOLD && deadRows > liveRows;
+        boolean stringsWasteful = garbageBytes > COMPACTION_THRESHOLD * 64 && garbageBytes > stringsEnd / 2;
+        if (!rowsWasteful && !stringsWasteful) {
+            return;
+        }
+
+        ByteBuffer oldStrings = strings;
+        strings = allocate(Math.max(INITIAL_STRING_BYTES, stringsEnd - garbageBytes));
+        stringsEnd = 0;
+        garbageBytes = 0;
+        int target = 0;
+        for (int row = 0; row < rows; row++) {
+            if (!isLive(row)) {
+                continue;
+            }
+            ids.putLong(target * Long.BYTES, ids.getLong(row * Long.BYTES));
+            versions.putLong(target * Long.BYTES, versions.getLong(row * Long.BYTES));
+            ages.putInt(target * Integer.BYTES, ages.getInt(row * Integer.BYTES));
+            departments.putInt(target * Integer.BYTES, departments.getInt(row * Integer.BYTES));
+            names.putLong(target * Long.BYTES, appendString(bytes(oldStrings, names.getLong(row * Long.BYTES))));
+            emails.putLong(target * Long.BYTES, appendString(bytes(oldStrings, emails.getLong(row * Long.BYTES))));
+            live.put(target, (byte) 1);
+            target++;
+        }
+        for (int row = target; row < rows; row++) {
+            live.put(row, (byte) 0);
+        }
+        rows = target;
+        rebuildEmailTable(Math.max(INITIAL_ROWS * 2, Integer.highestOneBit(Math.max(1, liveRows)) * 4));
+    }
+
+    // ---- string arena -----------------------------------------------------------------------
+
+    private long appendString(byte[] value) {
+        if (stringsEnd + value.length > strings.capacity()) {
+            long needed = (long) stringsEnd + value.length;
+            if (needed > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Off-heap string arena is full");
+            }
+            strings = copy(strings, (int) Math.min(Integer.MAX_VALUE, Math.max(needed, strings.capacity() * 2L)));
+        }
+        ByteBuffer target = strings.duplicate();
+        target.position(stringsEnd);
+        target.put(value);
+        long reference = ((long) stringsEnd << 32) | value.length;
+        stringsEnd += value.length;
+        return reference;
+    }
+
+    private void discard(ByteBuffer column, int row) {
+        garbageBytes += (int) column.getLong(row * Long.BYTES);
+    }
+
+    private String readString(long reference) {
+        return new String(bytes(strings, reference), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bytes(ByteBuffer arena, long reference) {
+        byte[] value = new byte[(int) reference];
+        ByteBuffer source = arena.duplicate();
+        source.position((int) (reference >>> 32));
+        source.get(value);
+        return value;
+    }
+
+    private boolean stringEquals(long reference, byte[] value) {
+        if ((int) reference != value.length) {
+            return false;
+        }
+        int offset = (int) (reference >>> 32);
+        for (int i = 0; i < value.length; i++) {
+            if (strings.get(offset + i) != value[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ---- email table ------------------------------------------------------------------------
+
+    private void allocateEmailTable(int slots) {
+        emailHashes = allocate(slots * Long.BYTES);
+        emailRows = allocate(slots * Integer.BYTES);
+        emailMask = slots - 1;
+    }
+
+    private void rebuildEmailTable(int slots) {
+        allocateEmailTable(slots);
+        for (int row = 0; row < rows; row++) {
+            if (isLive(row)) {
+                insertEmail(hashAt(emails, row), row);
+            }
+        }
+    }
+
+    /**
+     * @return row of the live user owning this email, or -1
+     */
+    private int findEmail(long hash, byte[] email) {
+        for (int slot = (int) hash & emailMask; ; slot = (slot + 1) & emailMask) {
+            int row = emailRows.getInt(slot * Integer.BYTES) - 1;
+            if (row < 0) {
+                return -1;
+            }
+            if (emailHashes.getLong(slot * Long.BYTES) == hash && stringEquals(emails.getLong(row * Long.BYTES), email)) {
+                return row;
+            }
+        }
+    }
+
+    private void insertEmail(long hash, int row) {
+        int slot = (int) hash & emailMask;
+        while (emailRows.getInt(slot * Integer.BYTES) != 0) {
+            slot = (slot + 1) & emailMask;
+        }
+        emailHashes.putLong(slot * Long.BYTES, hash);
+        emailRows.putInt(slot * Integer.BYTES, row + 1);
+    }
+
+    private void renumberEmail(long hash, int from, int to) {
+        int slot = (int) hash & emailMask;
+        while (emailRows.getInt(slot * Integer.BYTES) != from + 1) {
+            slot = (slot + 1) & emailMask;
+        }
+        emailRows.putInt(slot * Integer.BYTES, to + 1);
+    }
+
+    private void removeEmail(long hash, int row) {
+        int slot = (int) hash & emailMask;
+        while (emailRows.getInt(slot * Integer.BYTES) != row + 1) {
+            slot = (slot + 1) & emailMask;
+        }
+        // Backward-shift deletion keeps every remaining entry reachable from its home slot
+        int hole = slot;
+        for (int next = (hole + 1) & emailMask; ; next = (next + 1) & emailMask) {
+            int nextRow = emailRows.getInt(next * Integer.BYTES);
+            if (nextRow == 0) {
+                break;
+            }
+            long nextHash = emailHashes.getLong(next * Long.BYTES);
+            int home = (int) nextHash & emailMask;
+            if (((next - home) & emailMask) >= ((next - hole) & emailMask)) {
+                emailHashes.putLong(hole * Long.BYTES, nextHash);
+                emailRows.putInt(hole * Integer.BYTES, nextRow);
+                hole = next;
+            }
+        }
+        emailRows.putInt(hole * Integer.BYTES, 0);
+    }
+
+    private long hashAt(ByteBuffer column, int row) {
+        return hash(bytes(strings, column.getLong(row * Long.BYTES)));
+    }
+
+    private static long hash(byte[] value) {
+        // FNV-1a followed by a murmur3 finalizer to spread the low bits used for slots
+        long h = 0xcbf29ce484222325L;
+        for (byte b : value) {
+            h = (h ^ b) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer allocate(int bytes) {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+    }
+
+    private static ByteBuffer copy(ByteBuffer source, int bytes) {
+        ByteBuffer target = allocate(bytes);
+        ByteBuffer from = source.duplicate();
+        from.clear();
+        target.put(from);
+        target.clear();
+        return target;
+    }
+}
@@ -0,0 +1,549 @@
+package com.spectra.demo.repository;
+
+import com.spectra.demo.model.BatchOperation;
+import com.spectra.demo.model.User;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * User store split into independent shards, so parallel writes rarely meet
+ *
+ * A user lives in the shard picked by its ID hash, together with its entries
+ * in the ID-order and department indexes, the user version sequence and the
+ * department versions; all of them change under that shard's record lock.
+ * An email is reserved in the shard picked by the email's hash, under that
+ * shard's separate email lock, which is how uniqueness holds across shards
+ * without any global structure. Email locks are always taken last and never
+ * nested, so writers cannot deadlock. A create holds the two locks one after
+ * the other, so it checks under the record lock that no reset has cleared its
+ * reservation in between, and starts over if one has. The write listener is
+ * called under the record lock of the user written.
+ *
+ * Reads take no lock. The store version and department versions are sums of
+ * per-shard counters: each shard's part only grows, and grows after a write
+ * is visible, so the sum keeps the ordering guarantees of version() and
+ * departmentVersion() without a shared counter every write would hit.
+ */
+public class ShardedUserRepository implements UserRepository {
+
+    private final Shard[] shards;
+    private final int shardMask;
+    private final DepartmentDictionary departments = new DepartmentDictionary();
+    private final IdAllocator ids;
+    // Number of resets so far; written while every lock is held, so reading it under any one lock is safe
+    private long generation;
+    private volatile WriteListener listener = WriteListener.NONE;
+
+    /**
+     * @param shards number of shards, rounded up to a power of two
+     */
+    public ShardedUserRepository(int shards) {
+        this(shards, 1);
+    }
+
+    /**
+     * @param shards number of shards, rounded up to a power of two
+     * @param idBlockSize IDs each email shard claims at a time; 1 allocates every ID from one shared counter
+     */
+    public ShardedUserRepository(int shards, int idBlockSize) {
+        int count = shards <= 1 ? 1 : Integer.highestOneBit(shards - 1) << 1;
+        // Creates allocate under their email shard's lock, so each email shard owns one block
+        this.ids = new IdAllocator(idBlockSize, count);
+        this.shards = new Shard[count];
+        this.shardMask = count - 1;
+        for (int i = 0; i < count; i++) {
+            this.shards[i] = new Shard();
+        }
+    }
+
+    @Override
+    public Optional<User> findById(long id) {
+        UserRecord record = shardFor(id).users.get(id);
+        return record == null ? Optional.empty() : Optional.of(record.toUser(departments));
+    }
+
+    @Override
+    public UserPage findPage(Long after, int limit) {
+        // Merge the shards' ID orders; only the head of each is held in the queue
+        PriorityQueue<ShardCursor> heads = new PriorityQueue<>(shards.length);
+        for (Shard shard : shards) {
+            ShardCursor cursor = new ShardCursor(shard, after);
+            if (cursor.advance()) {
+                heads.add(cursor);
+            }
+        }
+        List<User> page = new ArrayList<>(Math.min(limit, 128));
+        Long last = null;
+        while (page.size() < limit && !heads.isEmpty()) {
+            ShardCursor cursor = heads.poll();
+            page.add(cursor.record.toUser(departments));
+            last = cursor.record.id;
+            if (cursor.advance()) {
+                heads.add(cursor);
+            }
+        }
+        boolean more = last != null && page.size() == limit && !heads.isEmpty();
+        return new UserPage(page, more ? last : null);
+    }
+
+    @Override
+    public List<User> findAll() {
+        List<User> all = new ArrayList<>(count());
+        forEach(all::add);
+        return all;
+    }
+
+    @Override
+    public List<User> findByDepartment(String department) {
+        BitSet codes = departments.matchingIgnoreCase(department);
+        List<User> departmentUsers = new ArrayList<>();
+        for (Shard shard : shards) {
+            for (int code = codes.nextSetBit(0); code >= 0; code = codes.nextSetBit(code + 1)) {
+                for (Long userId : shard.departmentIndex.getOrDefault(code, Collections.emptySet())) {
+                    // The index may briefly lead the map while a concurrent write lands
+                    UserRecord record = shard.users.get(userId);
+                    if (record != null && record.departmentCode == code) {
+                        departmentUsers.add(record.toUser(departments));
+                    }
+                }
+            }
+        }
+        return departmentUsers;
+    }
+
+    @Override
+    public int count() {
+        int count = 0;
+        for (Shard shard : shards) {
+            count += shard.users.size();
+        }
+        return count;
+    }
+
+    @Override
+    public long version() {
+        long version = 0;
+        for (Shard shard : shards) {
+            version += shard.writes;
+        }
+        return version;
+    }
+
+    @Override
+    public long departmentVersion(String department) {
+        BitSet codes = departments.matchingIgnoreCase(department);
+        long version = 0;
+        for (Shard shard : shards) {
+            version += shard.departmentVersions.get(codes);
+        }
+        return version;
+    }
+
+    @Override
+    public void indexSizes(BiConsumer<String, LongSupplier> gauge) {
+        gauge.accept("email", () -> {
+            long size = 0;
+            for (Shard shard : shards) {
+                size += shard.emailCount;
+            }
+            return size;
+        });
+        gauge.accept("department", () -> {
+            long size = 0;
+            for (Shard shard : shards) {
+                size += shard.departmentIndex.size();
+            }
+            return size;
+        });
+        gauge.accept("department.codes", departments::size);
+        gauge.accept("shards", () -> shards.length);
+    }
+
+    @Override
+    public void forEach(Consumer<? super User> action) {
+        for (Shard shard : shards) {
+            shard.users.forEachValue(record -> action.accept(record.toUser(departments)));
+        }
+    }
+
+    @Override
+    public WriteResult create(User user) {
+        int department = departments.encode(user.getDepartment());
+        int emailSlot = emailSlot(user.getEmail());
+        Shard emailShard = shards[emailSlot];
+        while (true) {
+            // Reserve the email in its own shard first; the ID is only allocated when the email is free
+            long id;
+            long reservedIn;
+            emailShard.emailLock.lock();
+            try {
+                if (emailShard.emails.containsKey(user.getEmail())) {
+                    return WriteResult.duplicateEmail();
+                }
+                id = ids.next(emailSlot);
+                emailShard.reserveEmail(user.getEmail(), id);
+                reservedIn = generation;
+            } finally {
+                emailShard.emailLock.unlock();
+            }
+
+            Shard shard = shardFor(id);
+            User created;
+            shard.lock.lock();
+            try {
+                if (generation != reservedIn) {
+                    // A reset cleared the reservation and may hand the ID out again: nothing of this attempt is left
+                    continue;
+                }
+                UserRecord record = UserRecord.of(id, ++shard.versionSequence, user, department);
+                shard.insert(record);
+                shard.written(department);
+                created = record.toUser(departments);
+                listener.put(created);
+            } finally {
+                shard.lock.unlock();
+            }
+            user.setId(id);
+            user.setVersion(created.getVersion());
+            return WriteResult.ok(created);
+        }
+    }
+
+    @Override
+    public WriteResult update(long id, User user, long expectedVersion) {
+        int department = departments.encode(user.getDepartment());
+        Shard shard = shardFor(id);
+        User updated;
+        shard.lock.lock();
+        try {
+            UserRecord existing = shard.users.get(id);
+            if (existing == null) {
+                return WriteResult.notFound();
+            }
+            if (expectedVersion != ANY_VERSION && existing.version != expectedVersion) {
+                return WriteResult.versionConflict(existing.toUser(departments));
+            }
+            if (!swapEmail(id, existing.email, user.getEmail())) {
+                return WriteResult.duplicateEmail();
+            }
+            UserRecord record = UserRecord.of(id, ++shard.versionSequence, user, department);
+            shard.unindex(existing);
+            shard.insert(record);
+            shard.written(existing.departmentCode, department);
+            updated = record.toUser(departments);
+            listener.put(updated);
+        } finally {
+            shard.lock.unlock();
+        }
+        return WriteResult.ok(updated);
+    }
+
+    @Override
+    public WriteResult delete(long id) {
+        Shard shard = shardFor(id);
+        UserRecord removed;
+        shard.lock.lock();
+        try {
+            removed = shard.users.remove(id);
+            if (removed == null) {
+                return WriteResult.notFound();
+            }
+            shard.unindex(removed);
+            shard.written(removed.departmentCode);
+            releaseEmail(removed.email, id);
+            listener.delete(id);
+        } finally {
+            shard.lock.unlock();
+        }
+        return WriteResult.ok(removed.toUser(departments));
+    }
+
+    /**
+     * Holds every record lock for the whole batch, taken in shard order as
+     * reset takes them, so no other write lands between its operations. The
+     * locks are reentrant, so each operation takes its own again at once.
+     */
+    @Override
+    public List<WriteResult> applyBatch(List<BatchOperation> operations) {
+        for (Shard shard : shards) {
+            shard.lock.lock();
+        }
+        try {
+            return UserRepository.super.applyBatch(operations);
+        } finally {
+            for (Shard shard : shards) {
+                shard.lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void restore(User user) {
+        long id = user.getId();
+        UserRecord record = UserRecord.of(id, user.getVersion(), user, departments.encode(user.getDepartment()));
+        Shard shard = shardFor(id);
+        shard.lock.lock();
+        try {
+            UserRecord previous = shard.users.get(id);
+            if (previous != null) {
+                shard.unindex(previous);
+                releaseEmail(previous.email, id);
+            }
+            Shard emailShard = emailShardFor(record.email);
+            emailShard.emailLock.lock();
+            try {
+                emailShard.reserveEmail(record.email, id);
+            } finally {
+                emailShard.emailLock.unlock();
+            }
+            shard.insert(record);
+            shard.versionSequence = Math.max(shard.versionSequence, record.version);
+            if (previous != null) {
+                shard.written(previous.departmentCode, record.departmentCode);
+            } else {
+                shard.written(record.departmentCode);
+            }
+            ids.advance(id + 1);
+            listener.put(user);
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    @Override
+    public void reset(Collection<User> seed) {
+        // Record locks in shard order, then email locks in shard order. A create that reserved its
+        // email before this and inserts after sees the new generation and starts over.
+        for (Shard shard : shards) {
+            shard.lock.lock();
+        }
+        for (Shard shard : shards) {
+            shard.emailLock.lock();
+        }
+        try {
+            generation++;
+            for (Shard shard : shards) {
+                shard.clear();
+            }
+            long maxId = 0;
+            for (User user : seed) {
+                long id = user.getId();
+                Shard shard = shardFor(id);
+                stampSeedVersion(shard, user);
+                UserRecord record = UserRecord.of(id, user.getVersion(), user, departments.encode(user.getDepartment()));
+                shard.insert(record);
+                emailShardFor(record.email).reserveEmail(record.email, id);
+                maxId = Math.max(maxId, id);
+            }
+            ids.reset(maxId + 1);
+            for (Shard shard : shards) {
+                shard.departmentVersions.touchAll(++shard.writes);
+            }
+            listener.reset(seed);
+        } finally {
+            for (Shard shard : shards) {
+                shard.emailLock.unlock();
+            }
+            for (Shard shard : shards) {
+                shard.lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public long nextId() {
+        return ids.limit();
+    }
+
+    @Override
+    public void advanceNextId(long nextId) {
+        ids.advance(nextId);
+    }
+
+    @Override
+    public void addWriteListener(WriteListener added) {
+        listener = listener.andThen(added);
+    }
+
+    /**
+     * New seed users get fresh versions from their shard, which every later
+     * version of the same ID also comes from, so no earlier version of a
+     * reused seed ID is ever repeated; replayed ones keep the version they
+     * were logged with.
+     */
+    private static void stampSeedVersion(Shard shard, User user) {
+        if (user.getVersion() == 0) {
+            user.setVersion(++shard.versionSequence);
+        } else {
+            shard.versionSequence = Math.max(shard.versionSequence, user.getVersion());
+        }
+    }
+
+    /**
+     * Move the email reservation of a user from its old to its new address.
+     * Called under the user's record lock; takes each email shard's lock in turn.
+     * @return false if the new address is already owned by another user
+     */
+    private boolean swapEmail(long id, String oldEmail, String newEmail) {
+        if (newEmail.equals(oldEmail)) {
+            return true;
+        }
+        Shard emailShard = emailShardFor(newEmail);
+        emailShard.emailLock.lock();
+        try {
+            Long owner = emailShard.emails.get(newEmail);
+            if (owner != null && owner != id) {
+                return false;
+            }
+            emailShard.reserveEmail(newEmail, id);
+        } finally {
+            emailShard.emailLock.unlock();
+        }
+        releaseEmail(oldEmail, id);
+        return true;
+    }
+
+    private void releaseEmail(String email, long id) {
+        Shard emailShard = emailShardFor(email);
+        emailShard.emailLock.lock();
+        try {
+            Long owner = emailShard.emails.get(email);
+            if (owner != null && owner == id) {
+                emailShard.emails.remove(email);
+                emailShard.emailCount = emailShard.emails.size();
+            }
+        } finally {
+            emailShard.emailLock.unlock();
+        }
+    }
+
+    private Shard shardFor(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return shards[(int) (h ^ (h >>> 32)) & shardMask];
+    }
+
+    private Shard emailShardFor(String email) {
+        return shards[emailSlot(email)];
+    }
+
+    private int emailSlot(String email) {
+        int h = email.hashCode() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & shardMask;
+    }
+
+    /**
+     * One lock domain: the users whose IDs hash here and the emails that hash here
+     */
+    private static final class Shard {
+
+        final ReentrantLock lock = new ReentrantLock();
+        // Writers already hold the shard lock, so one stripe is enough
+        final ConcurrentLongMap<UserRecord> users = new ConcurrentLongMap<>(1);
+        final NavigableSet<Long> sortedIds = new ConcurrentSkipListSet<>();
+        final Map<Integer, Set<Long>> departmentIndex = new ConcurrentHashMap<>();
+        final DepartmentVersions departmentVersions = new DepartmentVersions();
+        // Guarded by lock
+        long versionSequence;
+        // Writes made visible in this shard; written only under lock
+        volatile long writes;
+
+        final ReentrantLock emailLock = new ReentrantLock();
+        // Guarded by emailLock; nothing reads emails without it
+        final Map<String, Long> emails = new HashMap<>();
+        // Size of emails for the gauge, which cannot take the lock
+        volatile int emailCount;
+
+        void reserveEmail(String email, long id) {
+            emails.put(email, id);
+            emailCount = emails.size();
+        }
+
+        void insert(UserRecord record) {
+            // One box shared by the ID-order and department indexes
+            Long id = record.id;
+            users.put(id, record);
+            sortedIds.add(id);
+            if (record.departmentCode != DepartmentDictionary.NONE) {
+                departmentIndex.computeIfAbsent(record.departmentCode, code -> ConcurrentHashMap.newKeySet()).add(id);
+            }
+        }
+
+        /**
+         * Drop a record from the indexes; the caller replaces or removes it in users.
+         */
+        void unindex(UserRecord record) {
+            sortedIds.remove(record.id);
+            if (record.departmentCode != DepartmentDictionary.NONE) {
+                Set<Long> ids = departmentIndex.get(record.departmentCode);
+                if (ids != null) {
+                    ids.remove(record.id);
+                    // Writers are serialized by the shard lock, so nobody adds to the bucket meanwhile
+                    if (ids.isEmpty()) {
+                        departmentIndex.remove(record.departmentCode);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Count a write now visible to readers, and the departments it changed.
+         */
+        void written(int department) {
+            long version = ++writes;
+            departmentVersions.touch(department, version);
+        }
+
+        void written(int previousDepartment, int department) {
+            long version = ++writes;
+            departmentVersions.touch(previousDepartment, version);
+            departmentVersions.touch(department, version);
+        }
+
+        void clear() {
+            users.clear();
+            sortedIds.clear();
+            departmentIndex.clear();
+            emails.clear();
+            emailCount = 0;
+        }
+    }
+
+    /**
+     * Position in one shard's ID order, ordered by the ID it is at
+     */
+    private static final class ShardCursor implements Comparable<ShardCursor> {
+
+        private final Shard shard;
+        private final Iterator<Long> ids;
+        UserRecord record;
+
+        ShardCursor(Shard shard, Long after) {
+            this.shard = shard;
+            this.ids = (after == null ? shard.sortedIds : shard.sortedIds.tailSet(after, false)).iterator();
+        }
+
+        /**
+         * @return false once the shard has no more users
+         */
+        boolean advance() {
+            while (ids.hasNext()) {
+                record = shard.users.get(ids.next());
+                if (record != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public int compareTo(ShardCursor other) {
+            return Long.compare(record.id, other.record.id);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.spectra.demo.repository;
+
+import com.spectra.demo.model.User;
+
+import java.util.List;
+
+/**
+ * One page of users ordered by ID
+ */
+public final class UserPage {
+
+    private final List<User> users;
+    private final Long nextCursor;
+
+    public UserPage(List<User> users, Long nextCursor) {
+        this.users = users;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<User> getUsers() {
+        return users;
+    }
+
+    /**
+     * @return ID to pass as the cursor for the next page, or null on the last page
+     */
+    public Long getNextCursor() {
+        return nextCursor;
+    }
+}
@@ -0,0 +1,54 @@
+package com.spectra.demo.repository;
+
+import com.spectra.demo.model.User;
+
+/**
+ * Immutable stored form of a user, kept apart from the User wire DTO
+ *
+ * The store never holds a request body or hands out an instance it keeps,
+ * so a caller mutating a User cannot change stored state, and a record
+ * published to another thread is fully visible through its final fields.
+ * Primitive id and age avoid two boxes per user, and the department is a
+ * code in the store's DepartmentDictionary, so users of a department share
+ * one name and compare by int.
+ */
+final class UserRecord {
+
+    /**
+     * Stored age of a user that has none.
+     */
+    static final int ABSENT_AGE = Integer.MIN_VALUE;
+
+    final long id;
+    final long version;
+    final String name;
+    final String email;
+    final int age;
+    final int departmentCode;
+
+    UserRecord(long id, long version, String name, String email, int age, int departmentCode) {
+        this.id = id;
+        this.version = version;
+        this.name = name;
+        this.email = email;
+        this.age = age;
+        this.departmentCode = departmentCode;
+    }
+
+    /**
+     * @param departmentCode the user's department encoded by the store's dictionary
+     */
+    static UserRecord of(long id, long version, User user, int departmentCode) {
+        return new UserRecord(id, version, user.getName(), user.getEmail(),
+                user.getAge() == null ? ABSENT_AGE : user.getAge(), departmentCode);
+    }
+
+    /**
+     * @return a new DTO the caller is free to modify
+     */
+    User toUser(DepartmentDictionary departments) {
+        User user = new User(id, name, email, age == ABSENT_AGE ? null : age, departments.decode(departmentCode));
+        user.setVersion(version);
+        return user;
+    }
+}
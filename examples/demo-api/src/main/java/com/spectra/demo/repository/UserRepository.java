@@ -0,0 +1,157 @@
+package com.spectra.demo.repository;
+
+import com.spectra.demo.model.BatchOperation;
+import com.spectra.demo.model.User;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Storage for demo users
+ *
+ * Implementations own ID allocation and enforce email uniqueness; lookups by
+ * department are case-insensitive. Writes report their outcome through
+ * WriteResult rather than exceptions so callers can map them to responses.
+ *
+ * Every stored user carries a version stamped by the store when it is
+ * written. Versions come from one increasing sequence, so a user's version
+ * changes on every update and is never handed out twice.
+ */
+public interface UserRepository {
+
+    /**
+     * Expected version that matches whatever version is stored.
+     */
+    long ANY_VERSION = 0;
+
+    Optional<User> findById(long id);
+
+    /**
+     * @param after ID the page starts after, or null for the first page
+     * @param limit maximum number of users in the page
+     * @return users ordered by ID, with a cursor when more users follow
+     */
+    UserPage findPage(Long after, int limit);
+
+    List<User> findAll();
+
+    List<User> findByDepartment(String department);
+
+    int count();
+
+    /**
+     * Store-wide version, advanced after every write has become visible. Read
+     * it before reading users: a result can then be newer than the version
+     * says, but never older.
+     */
+    long version();
+
+    /**
+     * Store version of the latest write that added, changed or removed a user
+     * of the department, compared ignoring case. Like version() it never runs
+     * ahead of what a later findByDepartment returns, and writes to other
+     * departments leave it alone.
+     */
+    long departmentVersion(String department);
+
+    /**
+     * Describe the store's secondary structures for monitoring.
+     * @param gauge called once per structure with a stable name and a cheap
+     *              size reader, which may read without locking and lag slightly
+     */
+    default void indexSizes(BiConsumer<String, LongSupplier> gauge) {
+    }
+
+    /**
+     * Visit every user without copying the whole table. Iteration is weakly
+     * consistent: users written concurrently may or may not be seen.
+     */
+    default void forEach(Consumer<? super User> action) {
+        Long after = null;
+        do {
+            UserPage page = findPage(after, 512);
+            page.getUsers().forEach(action);
+            after = page.getNextCursor();
+        } while (after != null);
+    }
+
+    /**
+     * Store a new user under a freshly allocated ID, which is also set on the given user.
+     */
+    WriteResult create(User user);
+
+    default WriteResult update(long id, User user) {
+        return update(id, user, ANY_VERSION);
+    }
+
+    /**
+     * Replace a user only if it is still at the expected version. The check and
+     * the write are one atomic step, so of two updates made from the same
+     * version exactly one wins; the other gets VERSION_CONFLICT with the
+     * current user and nothing is written.
+     * @param expectedVersion version the caller last read, or ANY_VERSION
+     */
+    WriteResult update(long id, User user, long expectedVersion);
+
+    WriteResult delete(long id);
+
+    /**
+     * Apply already validated operations in order, each with the semantics of
+     * the single-user call, so later operations see the effect of earlier ones.
+     * Stores override this to hold their write locks for the whole batch, so
+     * no other write lands between its operations.
+     * @return one result per operation, in the same order
+     */
+    default List<WriteResult> applyBatch(List<BatchOperation> operations) {
+        List<WriteResult> results = new ArrayList<>(operations.size());
+        for (BatchOperation operation : operations) {
+            switch (operation.getOp()) {
+                case CREATE:
+                    results.add(create(operation.getUser()));
+                    break;
+                case UPDATE:
+                    results.add(update(operation.getId(), operation.getUser()));
+                    break;
+                default:
+                    results.add(delete(operation.getId()));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Insert or replace a user under its own ID and version without validating
+     * it, as when replaying writes that were already accepted. IDs and versions
+     * allocated afterwards continue past it.
+     */
+    void restore(User user);
+
+    /**
+     * Replace all users with the given ones; new IDs continue after the highest seeded ID.
+     * Seed users without a version are stamped with a new one.
+     */
+    void reset(Collection<User> seed);
+
+    /**
+     * @return an ID above every one allocated so far; creates continue from
+     * it unless the store hands out IDs in blocks, whose unused rest is skipped
+     */
+    long nextId();
+
+    /**
+     * Make sure IDs allocated afterwards are at least the given one, so IDs of
+     * deleted users are not handed out again after a restore.
+     */
+    void advanceNextId(long nextId);
+
+    /**
+     * Report every later write to the listener as well, in addition to those
+     * added before. Meant for wiring at startup, before the store takes writes.
+     */
+    void addWriteListener(WriteListener listener);
+}
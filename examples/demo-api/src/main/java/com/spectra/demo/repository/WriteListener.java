@@ -0,0 +1,73 @@
+package com.spectra.demo.repository;
+
+import com.spectra.demo.model.User;
+
+import java.util.Collection;
+
+/**
+ * Receives every write a store applies, while the store still holds it
+ *
+ * A store calls its listener under the lock that orders writes to the user
+ * concerned, and for a reset under every such lock. A listener appending to a
+ * log thus records each user's writes in the order the store applied them,
+ * and a reset after every write before it, without a lock of its own. Writes
+ * to different users may arrive in either order; replaying them still gives
+ * the same store, because a restore or delete only gives up an email the
+ * user itself still holds. Calls must be short and must not write to the store.
+ */
+public interface WriteListener {
+
+    WriteListener NONE = new WriteListener() {
+        @Override
+        public void put(User user) {
+        }
+
+        @Override
+        public void delete(long id) {
+        }
+
+        @Override
+        public void reset(Collection<User> seed) {
+        }
+
+        @Override
+        public WriteListener andThen(WriteListener next) {
+            return next;
+        }
+    };
+
+    /**
+     * A user was created, updated or restored; it carries its stored ID and version.
+     */
+    void put(User user);
+
+    void delete(long id);
+
+    /**
+     * Every user was replaced by the seed, whose versions are already stamped.
+     */
+    void reset(Collection<User> seed);
+
+    default WriteListener andThen(WriteListener next) {
+        WriteListener first = this;
+        return new WriteListener() {
+            @Override
+            public void put(User user) {
+                first.put(user);
+                next.put(user);
+            }
+
+            @Override
+            public void delete(long id) {
+                first.delete(id);
+                next.delete(id);
+            }
+
+            @Override
+            public void reset(Collection<User> seed) {
+                first.reset(seed);
+                next.reset(seed);
+            }
+        };
+    }
+}
@@ -0,0 +1,56 @@
+package com.spectra.demo.repository;
+
+import com.spectra.demo.model.User;
+
+/**
+ * Outcome of a create, update or delete
+ */
+public final class WriteResult {
+
+    public enum Status { OK, NOT_FOUND, DUPLICATE_EMAIL, VERSION_CONFLICT }
+
+    private static final WriteResult NOT_FOUND = new WriteResult(Status.NOT_FOUND, null);
+    private static final WriteResult DUPLICATE_EMAIL = new WriteResult(Status.DUPLICATE_EMAIL, null);
+
+    private final Status status;
+    private final User user;
+
+    private WriteResult(Status status, User user) {
+        this.status = status;
+        this.user = user;
+    }
+
+    /**
+     * @param user the stored user, or the removed one for a delete
+     */
+    public static WriteResult ok(User user) {
+        return new WriteResult(Status.OK, user);
+    }
+
+    public static WriteResult notFound() {
+        return NOT_FOUND;
+    }
+
+    public static WriteResult duplicateEmail() {
+        return DUPLICATE_EMAIL;
+    }
+
+    /**
+     * @param current the stored user, whose version differs from the expected one
+     */
+    public static WriteResult versionConflict(User current) {
+        return new WriteResult(Status.VERSION_CONFLICT, current);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isOk() {
+        return status == Status.OK;
+    }
+
+    public User getUser() {
+        return user;
+    }
+}
@@ -0,0 +1,78 @@
+package com.spectra.demo.bulk;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.spectra.demo.logging.EventLogger;
+import com.spectra.demo.metrics.UserMetrics;
+import com.spectra.demo.model.ImportSummary;
+import com.spectra.demo.persistence.Durability;
+import com.spectra.demo.persistence.JournaledUserRepository;
+import com.spectra.demo.persistence.MutationLog;
+import com.spectra.demo.repository.InMemoryUserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.validation.Validation;
+import javax.validation.ValidatorFactory;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NdjsonUserImporterTest {
+
+    private static final EventLogger EVENTS = new EventLogger(EventLogger.Level.OFF, 2);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void importIntoSlowLogKeepsTheLogBacklogBounded() throws Exception {
+        int users = 50_000;
+        long maxQueuedBytes = 64 * 1024;
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < users; i++) {
+            body.append("{\"name\":\"User ").append(i).append("\",\"email\":\"user").append(i)
+                    .append("@example.com\",\"age\":30,\"department\":\"Engineering\"}\n");
+        }
+
+        Path file = directory.resolve("users.wal");
+        // Writes once every 20 ms, far slower than the importer parses
+        try (MutationLog log = new MutationLog(file, Durability.BATCHED, 20, maxQueuedBytes, EVENTS);
+             ValidatorFactory validation = Validation.buildDefaultValidatorFactory()) {
+            InMemoryUserRepository store = new InMemoryUserRepository();
+            log.replay(store, 0);
+            NdjsonUserImporter importer = new NdjsonUserImporter(new JournaledUserRepository(store, log, 0), EVENTS,
+                    new UserMetrics(new SimpleMeterRegistry()), validation.getValidator(), new ObjectMapper());
+
+            AtomicBoolean done = new AtomicBoolean();
+            AtomicLong peak = new AtomicLong();
+            Thread sampler = new Thread(() -> {
+                while (!done.get()) {
+                    peak.accumulateAndGet(log.queuedBytes(), Math::max);
+                    Thread.yield();
+                }
+            });
+            sampler.start();
+            ImportSummary summary;
+            try {
+                summary = importer.importUsers(new ByteArrayInputStream(body.toString().getBytes(StandardCharsets.UTF_8)));
+            } finally {
+                done.set(true);
+                sampler.join();
+                importer.stop();
+            }
+
+            assertThat(summary.getImported()).isEqualTo(users);
+            assertThat(store.count()).isEqualTo(users);
+            // The limit may be overshot by the chunk that crossed it, but by no more
+            long chunkBytes = 128L * NdjsonUserImporter.CHUNK_LINES;
+            assertThat(peak.get()).isPositive().isLessThanOrEqualTo(maxQueuedBytes + chunkBytes);
+            assertThat(Files.size(file) + log.queuedBytes()).isGreaterThan(10 * (maxQueuedBytes + chunkBytes));
+        }
+    }
+}
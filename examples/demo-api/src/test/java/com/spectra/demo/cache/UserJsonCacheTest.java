@@ -0,0 +1,75 @@
+package com.spectra.demo.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.spectra.demo.model.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserJsonCacheTest {
+
+    private final UserJsonCache cache = new UserJsonCache(new ObjectMapper(), 100, new SimpleMeterRegistry());
+
+    @Test
+    void repeatedReadOfTheSameVersionIsServedFromTheCache() {
+        byte[] first = cache.json(user(1, "John Doe"));
+        byte[] second = cache.json(user(1, "John Doe"));
+
+        assertThat(second).isSameAs(first);
+        assertThat(cache.stats().hitCount()).isEqualTo(1);
+        assertThat(cache.stats().missCount()).isEqualTo(1);
+    }
+
+    @Test
+    void newerVersionIsReEncodedEvenWithoutAnInvalidation() {
+        cache.json(user(1, "John Doe"));
+        User updated = user(1, "Johnny");
+        updated.setVersion(2);
+
+        assertThat(json(cache.json(updated))).contains("Johnny");
+        assertThat(cache.stats().hitCount()).isZero();
+    }
+
+    @Test
+    void readerThatLostARaceDoesNotReplaceTheNewerEncoding() {
+        User updated = user(1, "Johnny");
+        updated.setVersion(2);
+        cache.json(updated);
+
+        // Encoded for the stale reader, but the cache keeps version 2
+        assertThat(json(cache.json(user(1, "John Doe")))).contains("John Doe");
+        assertThat(json(cache.json(updated))).contains("Johnny");
+        assertThat(cache.stats().hitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void invalidationDropsTheEntry() {
+        cache.json(user(1, "John Doe"));
+        cache.json(user(2, "Jane Smith"));
+
+        // As after an update or delete of user 1
+        cache.invalidate(1);
+        cache.json(user(1, "John Doe"));
+        cache.json(user(2, "Jane Smith"));
+        assertThat(cache.stats().missCount()).isEqualTo(3);
+        assertThat(cache.stats().hitCount()).isEqualTo(1);
+
+        // As after a reset
+        cache.invalidateAll();
+        cache.json(user(2, "Jane Smith"));
+        assertThat(cache.stats().missCount()).isEqualTo(4);
+    }
+
+    private static User user(long id, String name) {
+        User user = new User(id, name, "user" + id + "@example.com", 30, "Engineering");
+        user.setVersion(1);
+        return user;
+    }
+
+    private static String json(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
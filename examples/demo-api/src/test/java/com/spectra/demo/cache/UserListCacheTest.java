@@ -0,0 +1,101 @@
+package com.spectra.demo.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.spectra.demo.model.User;
+import com.spectra.demo.repository.InMemoryUserRepository;
+import com.spectra.demo.repository.UserPage;
+import com.spectra.demo.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserListCacheTest {
+
+    private final UserListCache cache = new UserListCache(new ObjectMapper(), 1 << 20, true, new SimpleMeterRegistry());
+    private final UserRepository users = new InMemoryUserRepository();
+    // Listings read from the store rather than served from the cache
+    private final AtomicInteger reads = new AtomicInteger();
+
+    @BeforeEach
+    void seed() {
+        users.reset(List.of(
+                new User(1L, "John Doe", "john.doe@example.com", 30, "Engineering"),
+                new User(2L, "Jane Smith", "jane.smith@example.com", 28, "Marketing"),
+                new User(3L, "Bob Johnson", "bob.johnson@example.com", 35, "Engineering")));
+    }
+
+    @Test
+    void writeToOneDepartmentRebuildsOnlyThatDepartmentsListing() {
+        department("Engineering");
+        department("Marketing");
+        assertThat(reads).hasValue(2);
+
+        assertThat(users.update(2, new User(2L, "Janet", "jane.smith@example.com", 28, "Marketing"),
+                UserRepository.ANY_VERSION).isOk()).isTrue();
+
+        department("Engineering");
+        assertThat(reads).as("Engineering listing still current").hasValue(2);
+        assertThat(new String(department("Marketing").getJson(), StandardCharsets.UTF_8)).contains("Janet");
+        assertThat(reads).hasValue(3);
+    }
+
+    @Test
+    void writeChangesTheFullListing() {
+        all();
+        users.delete(3);
+        assertThat(all().getCount()).isEqualTo(2);
+        assertThat(reads).hasValue(2);
+    }
+
+    @Test
+    void gzipVariantIsCompressedOnceAndKeptWithTheListing() throws IOException {
+        UserListCache.Listing listing = department("Engineering");
+        byte[] gzip = cache.gzipped(UserListCache.departmentKey("Engineering"), listing);
+        assertThat(gunzip(gzip)).isEqualTo(listing.getJson());
+
+        UserListCache.Listing cached = department("Engineering");
+        assertThat(reads).hasValue(1);
+        assertThat(cache.gzipped(UserListCache.departmentKey("Engineering"), cached)).isSameAs(gzip);
+    }
+
+    @Test
+    void gzipIsChosenOnlyWhenAccepted() {
+        assertThat(cache.shouldGzip("gzip, deflate")).isTrue();
+        assertThat(cache.shouldGzip("br;q=1.0, GZIP;q=0.5")).isTrue();
+        assertThat(cache.shouldGzip("gzip;q=0")).isFalse();
+        assertThat(cache.shouldGzip("deflate")).isFalse();
+        assertThat(cache.shouldGzip(null)).isFalse();
+        assertThat(new UserListCache(new ObjectMapper(), 1 << 20, false, new SimpleMeterRegistry())
+                .shouldGzip("gzip")).isFalse();
+    }
+
+    private UserListCache.Listing department(String department) {
+        return cache.listing(UserListCache.departmentKey(department), users.departmentVersion(department), () -> {
+            reads.incrementAndGet();
+            return new UserPage(users.findByDepartment(department), null);
+        });
+    }
+
+    private UserListCache.Listing all() {
+        return cache.listing(UserListCache.allKey(), users.version(), () -> {
+            reads.incrementAndGet();
+            return new UserPage(users.findAll(), null);
+        });
+    }
+
+    private static byte[] gunzip(byte[] gzip) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip))) {
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.spectra.demo.controller;
+
+import com.spectra.demo.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ETagsTest {
+
+    private final ETags etags = new ETags();
+
+    @Test
+    void ifNoneMatchComparesWeakly() {
+        String etag = etags.forUser(1, 3);
+        assertThat(ETags.matches(etag, etag)).isTrue();
+        assertThat(ETags.matches("W/" + etag, etag)).isTrue();
+        assertThat(ETags.matches(etags.forUser(1, 2), etag)).isFalse();
+        assertThat(ETags.matches(null, etag)).isFalse();
+    }
+
+    @Test
+    void ifNoneMatchStarMatchesAnyTag() {
+        assertThat(ETags.matches("*", etags.forUser(1, 3))).isTrue();
+        assertThat(ETags.matches("*", etags.forCollection(7))).isTrue();
+    }
+
+    @Test
+    void ifNoneMatchMatchesAnyTagInAList() {
+        String etag = etags.forCollection(7);
+        assertThat(ETags.matches("\"other\", W/" + etag + " ,\"another\"", etag)).isTrue();
+        assertThat(ETags.matches("\"other\",\"another\"", etag)).isFalse();
+    }
+
+    @Test
+    void gzipVariantIsADistinctTag() {
+        String etag = etags.forCollection(7);
+        String gzip = ETags.gzipVariant(etag);
+        assertThat(gzip).isNotEqualTo(etag).startsWith("\"").endsWith("\"");
+        assertThat(ETags.matches(etag, gzip)).isFalse();
+        assertThat(ETags.matches(gzip, etag)).isFalse();
+    }
+
+    @Test
+    void tagFromAnotherEpochMisses() throws InterruptedException {
+        ETags restarted = restartedAfter(etags);
+        assertThat(ETags.matches(etags.forUser(1, 3), restarted.forUser(1, 3))).isFalse();
+        assertThat(ETags.matches(etags.forCollection(7), restarted.forCollection(7))).isFalse();
+        assertThat(restarted.expectedVersion(etags.forUser(1, 3), 1)).isEqualTo(ETags.NO_MATCH);
+    }
+
+    @Test
+    void userTagsFromTheSameLeaderRunMatchOnEveryNode() {
+        ETags leader = new ETags(() -> 41);
+        ETags follower = new ETags(() -> 41);
+        ETags nextRun = new ETags(() -> 42);
+        assertThat(ETags.matches(leader.forUser(1, 3), follower.forUser(1, 3))).isTrue();
+        assertThat(follower.expectedVersion(leader.forUser(1, 3), 1)).isEqualTo(3);
+        assertThat(ETags.matches(leader.forUser(1, 3), nextRun.forUser(1, 3))).isFalse();
+        assertThat(nextRun.expectedVersion(leader.forUser(1, 3), 1)).isEqualTo(ETags.NO_MATCH);
+    }
+
+    @Test
+    void ifMatchComparesStrongly() {
+        assertThat(etags.expectedVersion(etags.forUser(1, 3), 1)).isEqualTo(3);
+        assertThat(etags.expectedVersion("W/" + etags.forUser(1, 3), 1)).isEqualTo(ETags.NO_MATCH);
+        assertThat(etags.expectedVersion("*", 1)).isEqualTo(UserRepository.ANY_VERSION);
+        assertThat(etags.expectedVersion("\"other\", " + etags.forUser(1, 3), 1)).isEqualTo(3);
+        // A tag for another user, a listing or a version never issued names nothing here
+        assertThat(etags.expectedVersion(etags.forUser(2, 3), 1)).isEqualTo(ETags.NO_MATCH);
+        assertThat(etags.expectedVersion(etags.forUser(1, 3), 11)).isEqualTo(ETags.NO_MATCH);
+        assertThat(etags.expectedVersion(etags.forCollection(3), 1)).isEqualTo(ETags.NO_MATCH);
+        assertThat(etags.expectedVersion(etags.forUser(1, 0), 1)).isEqualTo(ETags.NO_MATCH);
+    }
+
+    private static ETags restartedAfter(ETags before) throws InterruptedException {
+        // The epoch is the startup time, so a restart is a new instance a clock tick later
+        ETags after = new ETags();
+        while (after.forCollection(0).equals(before.forCollection(0))) {
+            Thread.sleep(2);
+            after = new ETags();
+        }
+        return after;
+    }
+}
@@ -0,0 +1,179 @@
+package com.spectra.demo.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.spectra.demo.model.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.not;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Conditional reads and updates against /api/v1/users on the servlet stack, over the demo users
+ */
+@SpringBootTest(properties = "demo.events.level=OFF")
+@AutoConfigureMockMvc
+class UserControllerTest {
+
+    private static final String USERS = "/api/v1/users";
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @BeforeEach
+    void resetTestData() throws Exception {
+        mvc.perform(post(USERS + "/reset-test-data")).andExpect(status().isOk());
+    }
+
+    @Test
+    void userAnswers304WhileItsTagIsCurrent() throws Exception {
+        String etag = etag(USERS + "/1");
+
+        mvc.perform(get(USERS + "/1").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andExpect(content().bytes(new byte[0]));
+        mvc.perform(get(USERS + "/1").header(HttpHeaders.IF_NONE_MATCH, "\"other\", W/" + etag))
+                .andExpect(status().isNotModified());
+
+        update(new User(1L, "Johnny", "john.doe@example.com", 30, "Engineering"));
+        mvc.perform(get(USERS + "/1").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, not(etag)));
+    }
+
+    @Test
+    void listingAnswers304UntilAWriteChangesIt() throws Exception {
+        String etag = etag(USERS);
+
+        mvc.perform(get(USERS).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING));
+        // The gzip variant carries its own tag, so the identity one does not vouch for it
+        mvc.perform(get(USERS).header(HttpHeaders.IF_NONE_MATCH, etag).header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"));
+
+        update(new User(2L, "Janet", "jane.smith@example.com", 28, "Marketing"));
+        mvc.perform(get(USERS).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, not(etag)));
+    }
+
+    @Test
+    void gzipListingCarriesItsOwnTag() throws Exception {
+        String identity = etag(USERS);
+        String gzip = mvc.perform(get(USERS).header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(gzip).isNotEqualTo(identity);
+
+        mvc.perform(get(USERS).header(HttpHeaders.IF_NONE_MATCH, gzip).header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, gzip));
+        mvc.perform(get(USERS).header(HttpHeaders.IF_NONE_MATCH, gzip))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, identity));
+    }
+
+    @Test
+    void departmentListingAnswers304UntilAWriteToThatDepartment() throws Exception {
+        String etag = etag(USERS + "/department/Marketing");
+
+        update(new User(1L, "Johnny", "john.doe@example.com", 30, "Engineering"));
+        mvc.perform(get(USERS + "/department/Marketing").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+
+        update(new User(2L, "Janet", "jane.smith@example.com", 28, "Marketing"));
+        mvc.perform(get(USERS + "/department/Marketing").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void updateWithCurrentTagSucceedsAndStaleTagAnswers412() throws Exception {
+        String etag = etag(USERS + "/1");
+        User johnny = new User(1L, "Johnny", "john.doe@example.com", 30, "Engineering");
+
+        String updated = mvc.perform(conditionalUpdate(johnny, etag))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, not(etag)))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        // The loser of the race learns the current tag and the winner's update stands
+        mvc.perform(conditionalUpdate(new User(1L, "Jonathan", "john.doe@example.com", 30, "Engineering"), etag))
+                .andExpect(status().isPreconditionFailed())
+                .andExpect(header().string(HttpHeaders.ETAG, updated));
+        mvc.perform(get(USERS + "/1"))
+                .andExpect(jsonPath("$.name").value("Johnny"));
+    }
+
+    @Test
+    void tagFromAnotherEpochAnswers412() throws Exception {
+        // Shaped like a current tag, but issued by a process that started at another time
+        String etag = etag(USERS + "/1");
+        String otherEpoch = "\"0" + etag.substring(etag.indexOf('-'));
+
+        mvc.perform(conditionalUpdate(new User(1L, "Johnny", "john.doe@example.com", 30, "Engineering"), otherEpoch))
+                .andExpect(status().isPreconditionFailed());
+        mvc.perform(conditionalUpdate(new User(1L, "Johnny", "john.doe@example.com", 30, "Engineering"), "W/" + etag))
+                .andExpect(status().isPreconditionFailed());
+        mvc.perform(get(USERS + "/1").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void ifMatchOnAMissingUserAnswers412EvenForStar() throws Exception {
+        User missing = new User(404L, "Nobody", "nobody@example.com", 30, "Engineering");
+        mvc.perform(conditionalUpdate(missing, etag(USERS + "/1").replace("-1.", "-404.")))
+                .andExpect(status().isPreconditionFailed());
+        mvc.perform(conditionalUpdate(missing, "*"))
+                .andExpect(status().isPreconditionFailed());
+        mvc.perform(put(USERS + "/404").contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(missing)))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void ifMatchStarUpdatesAnExistingUser() throws Exception {
+        mvc.perform(conditionalUpdate(new User(1L, "Johnny", "john.doe@example.com", 30, "Engineering"), "*"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("Johnny"));
+    }
+
+    private MockHttpServletRequestBuilder conditionalUpdate(User user, String ifMatch) throws Exception {
+        return put(USERS + "/" + user.getId()).contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.IF_MATCH, ifMatch)
+                .content(objectMapper.writeValueAsString(user));
+    }
+
+    private String etag(String uri) throws Exception {
+        return mvc.perform(get(uri))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+    }
+
+    private void update(User user) throws Exception {
+        mvc.perform(put(USERS + "/" + user.getId()).contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(user)))
+                .andExpect(status().isOk());
+    }
+}
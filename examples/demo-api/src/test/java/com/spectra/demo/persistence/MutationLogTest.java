@@ -0,0 +1,163 @@
+package com.spectra.demo.persistence;
+
+import com.spectra.demo.logging.EventLogger;
+import com.spectra.demo.model.User;
+import com.spectra.demo.repository.InMemoryUserRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MutationLogTest {
+
+    private static final EventLogger EVENTS = new EventLogger(EventLogger.Level.OFF, 2);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replayStopsAtCorruptTailAndTruncatesIt() throws IOException {
+        Path file = directory.resolve("users.wal");
+        long intactBytes;
+        try (MutationLog log = open(file, Durability.SYNC)) {
+            log.replay(new InMemoryUserRepository(), 0);
+            for (long id = 1; id <= 9; id++) {
+                log.awaitDurable(log.appendPut(user(id)));
+            }
+            intactBytes = Files.size(file);
+            log.awaitDurable(log.appendPut(user(10)));
+        }
+        flipLastByte(file);
+
+        InMemoryUserRepository store = new InMemoryUserRepository();
+        try (MutationLog log = open(file, Durability.SYNC)) {
+            assertThat(log.replay(store, 0)).isEqualTo(9);
+            assertThat(log.lastSequence()).isEqualTo(9);
+            assertThat(Files.size(file)).isEqualTo(intactBytes);
+
+            // Appends continue right after the last intact record
+            log.awaitDurable(log.appendPut(user(11)));
+        }
+        assertThat(store.count()).isEqualTo(9);
+        assertThat(store.findById(10)).isEmpty();
+
+        InMemoryUserRepository reloaded = new InMemoryUserRepository();
+        try (MutationLog log = open(file, Durability.SYNC)) {
+            assertThat(log.replay(reloaded, 0)).isEqualTo(10);
+        }
+        assertThat(reloaded.findById(11)).isPresent();
+    }
+
+    @Test
+    void replayTruncatesPartialRecordHeader() throws IOException {
+        Path file = directory.resolve("users.wal");
+        try (MutationLog log = open(file, Durability.SYNC)) {
+            log.replay(new InMemoryUserRepository(), 0);
+            log.awaitDurable(log.appendPut(user(1)));
+            log.awaitDurable(log.appendDelete(1));
+        }
+        long intactBytes = Files.size(file);
+        Files.write(file, new byte[]{0, 0, 1}, StandardOpenOption.APPEND);
+
+        InMemoryUserRepository store = new InMemoryUserRepository();
+        try (MutationLog log = open(file, Durability.SYNC)) {
+            assertThat(log.replay(store, 0)).isEqualTo(2);
+        }
+        assertThat(Files.size(file)).isEqualTo(intactBytes);
+        assertThat(store.count()).isZero();
+    }
+
+    @Test
+    void concurrentSyncAppendsShareForces() throws Exception {
+        int threads = 16;
+        int appendsPerThread = 100;
+        Path file = directory.resolve("users.wal");
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (MutationLog log = open(file, Durability.SYNC)) {
+            log.replay(new InMemoryUserRepository(), 0);
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                long firstId = (long) t * appendsPerThread + 1;
+                writers.add(executor.submit(() -> {
+                    for (long id = firstId; id < firstId + appendsPerThread; id++) {
+                        log.awaitDurable(log.appendPut(user(id)));
+                    }
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get(60, TimeUnit.SECONDS);
+            }
+            assertThat(log.lastSequence()).isEqualTo(threads * appendsPerThread);
+            assertThat(log.forceCount()).isLessThan(threads * appendsPerThread);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        InMemoryUserRepository store = new InMemoryUserRepository();
+        try (MutationLog log = open(file, Durability.SYNC)) {
+            assertThat(log.replay(store, 0)).isEqualTo(threads * appendsPerThread);
+        }
+        assertThat(store.count()).isEqualTo(threads * appendsPerThread);
+    }
+
+    @Test
+    void compactionKeepsEveryRecordAfterTheCut() throws IOException {
+        Path file = directory.resolve("users.wal");
+        try (MutationLog log = open(file, Durability.BATCHED)) {
+            log.replay(new InMemoryUserRepository(), 0);
+            for (long id = 1; id <= 100; id++) {
+                log.appendPut(user(id));
+            }
+            log.compactThrough(60);
+            for (long id = 101; id <= 120; id++) {
+                log.appendPut(user(id));
+            }
+            log.appendDelete(61);
+        }
+
+        InMemoryUserRepository store = new InMemoryUserRepository();
+        try (MutationLog log = open(file, Durability.BATCHED)) {
+            // Sequence 0: anything left at or before the cut would be replayed too
+            assertThat(log.replay(store, 0)).isEqualTo(61);
+            assertThat(log.lastSequence()).isEqualTo(121);
+        }
+        assertThat(store.count()).isEqualTo(59);
+        assertThat(store.findById(60)).isEmpty();
+        assertThat(store.findById(61)).isEmpty();
+        for (long id = 62; id <= 120; id++) {
+            assertThat(store.findById(id)).hasValueSatisfying(user -> assertThat(user.getName()).isEqualTo("User " + user.getId()));
+        }
+    }
+
+    private static MutationLog open(Path file, Durability durability) throws IOException {
+        return new MutationLog(file, durability, 1, EVENTS);
+    }
+
+    private static User user(long id) {
+        User user = new User(id, "User " + id, "user" + id + "@example.com", 30, "Engineering");
+        user.setVersion(id);
+        return user;
+    }
+
+    private static void flipLastByte(Path file) throws IOException {
+        try (RandomAccessFile raw = new RandomAccessFile(file.toFile(), "rw")) {
+            long last = raw.length() - 1;
+            raw.seek(last);
+            int value = raw.read();
+            raw.seek(last);
+            raw.write(value ^ 0xFF);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.spectra.demo.persistence;
+
+import com.spectra.demo.logging.EventLogger;
+import com.spectra.demo.model.User;
+import com.spectra.demo.repository.InMemoryUserRepository;
+import com.spectra.demo.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserSnapshotTest {
+
+    private static final EventLogger EVENTS = new EventLogger(EventLogger.Level.OFF, 2);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void snapshotTakenDuringWritesPlusLogTailRestoresTheStore() throws Exception {
+        Path logFile = directory.resolve("users.wal");
+        Path snapshotFile = directory.resolve("users.snap");
+        InMemoryUserRepository store = new InMemoryUserRepository();
+        List<String> expected;
+        long nextId;
+
+        try (MutationLog log = new MutationLog(logFile, Durability.BATCHED, 1, EVENTS)) {
+            log.replay(store, 0);
+            JournaledUserRepository users = new JournaledUserRepository(store, log, 0);
+            for (int i = 0; i < 2000; i++) {
+                users.create(user("seed" + i));
+            }
+
+            AtomicBoolean running = new AtomicBoolean(true);
+            AtomicLong emails = new AtomicLong();
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                writers.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (running.get()) {
+                        long id = 1 + random.nextLong(users.nextId());
+                        switch (random.nextInt(3)) {
+                            case 0:
+                                users.create(user("new" + emails.incrementAndGet()));
+                                break;
+                            case 1:
+                                users.update(id, user("moved" + emails.incrementAndGet()));
+                                break;
+                            default:
+                                users.delete(id);
+                        }
+                    }
+                }));
+            }
+            try {
+                Thread.sleep(50);
+                UserSnapshot first = users.snapshot(snapshotFile);
+                Thread.sleep(50);
+                UserSnapshot second = users.snapshot(snapshotFile);
+                assertThat(second.getSequence()).isGreaterThan(first.getSequence());
+                Thread.sleep(50);
+            } finally {
+                running.set(false);
+                for (Future<?> writer : writers) {
+                    writer.get(30, TimeUnit.SECONDS);
+                }
+                executor.shutdown();
+            }
+            expected = describe(store);
+            nextId = store.nextId();
+        }
+
+        InMemoryUserRepository restarted = new InMemoryUserRepository();
+        UserSnapshot snapshot = UserSnapshot.load(snapshotFile, restarted);
+        try (MutationLog log = new MutationLog(logFile, Durability.BATCHED, 1, EVENTS)) {
+            assertThat(log.replay(restarted, snapshot.getSequence())).isPositive();
+        }
+        assertThat(describe(restarted)).isEqualTo(expected);
+        assertThat(restarted.nextId()).isEqualTo(nextId);
+    }
+
+    @Test
+    void currentSnapshotIncludesWritesSinceTheLatestOne() throws Exception {
+        Path logFile = directory.resolve("users.wal");
+        Path snapshotFile = directory.resolve("users.snap");
+        InMemoryUserRepository store = new InMemoryUserRepository();
+        try (MutationLog log = new MutationLog(logFile, Durability.BATCHED, 1, EVENTS)) {
+            log.replay(store, 0);
+            JournaledUserRepository users = new JournaledUserRepository(store, log, 0);
+            // Scheduled runs never come due, so only currentSnapshot writes the file
+            try (SnapshotScheduler scheduler = new SnapshotScheduler(users, snapshotFile, 3_600_000, 1, EVENTS)) {
+                users.create(user("first"));
+                assertThat(UserSnapshot.load(scheduler.currentSnapshot(), new InMemoryUserRepository()).getCount())
+                        .isEqualTo(1);
+
+                users.create(user("second"));
+                users.delete(1);
+                InMemoryUserRepository exported = new InMemoryUserRepository();
+                UserSnapshot current = UserSnapshot.load(scheduler.currentSnapshot(), exported);
+                assertThat(current.getSequence()).isEqualTo(log.lastSequence());
+                assertThat(describe(exported)).isEqualTo(describe(store));
+
+                // Nothing written since: the file is reused rather than rewritten
+                FileTime written = Files.getLastModifiedTime(snapshotFile);
+                Files.setLastModifiedTime(snapshotFile, FileTime.fromMillis(written.toMillis() - 60_000));
+                scheduler.currentSnapshot();
+                assertThat(Files.getLastModifiedTime(snapshotFile).toMillis()).isEqualTo(written.toMillis() - 60_000);
+            }
+        }
+    }
+
+    @Test
+    void usersStraddlingMappedRegionsRoundTrip() throws IOException {
+        Path file = directory.resolve("users.snap");
+        InMemoryUserRepository source = new InMemoryUserRepository();
+        for (int i = 0; i < 500; i++) {
+            source.create(user("straddle" + i));
+        }
+        source.delete(7);
+
+        // Region sizes that no record boundary lines up with
+        UserSnapshot written = UserSnapshot.write(file, 42, source.nextId(), source, 1001);
+        InMemoryUserRepository target = new InMemoryUserRepository();
+        UserSnapshot loaded = UserSnapshot.load(file, target, 997);
+
+        assertThat(written.getCount()).isEqualTo(499);
+        assertThat(loaded.getSequence()).isEqualTo(42);
+        assertThat(loaded.getCount()).isEqualTo(499);
+        assertThat(describe(target)).isEqualTo(describe(source));
+        assertThat(target.nextId()).isEqualTo(source.nextId());
+    }
+
+    private static User user(String name) {
+        return new User(null, name, name + "@example.com", 30, name.length() % 2 == 0 ? "Engineering" : "Sales");
+    }
+
+    private static List<String> describe(UserRepository store) {
+        return store.findAll().stream()
+                .sorted(Comparator.comparing(User::getId))
+                .map(user -> user.getId() + "|" + user.getVersion() + "|" + user.getName() + "|"
+                        + user.getEmail() + "|" + user.getAge() + "|" + user.getDepartment())
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,91 @@
+package com.spectra.demo.replication;
+
+import com.spectra.demo.persistence.MutationLog;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ReplicationLogTest {
+
+    @Test
+    void retainsExactlyTheRecordsStillInTheRing() {
+        ReplicationLog log = new ReplicationLog(4);
+        assertThat(log.retains(0)).isTrue();
+        appendDeletes(log, 10);
+
+        // The ring holds 7..10, so a follower at 6 can resume and one at 5 cannot
+        assertThat(log.retains(10)).isTrue();
+        assertThat(log.retains(6)).isTrue();
+        assertThat(log.retains(5)).isFalse();
+        assertThat(log.retains(0)).isFalse();
+        // A position the leader never reached belongs to another run
+        assertThat(log.retains(11)).isFalse();
+    }
+
+    @Test
+    void awaitAfterReadsAcrossTheWrapInSequenceOrder() throws InterruptedException {
+        ReplicationLog log = new ReplicationLog(4);
+        appendDeletes(log, 6);
+
+        List<byte[]> records = new ArrayList<>();
+        assertThat(log.awaitAfter(2, 10, 0, records)).isTrue();
+        assertThat(sequences(records)).containsExactly(3L, 4L, 5L, 6L);
+        // Record bodies come back with their record, not with whatever shares the slot
+        assertThat(records.stream().map(record -> ByteBuffer.wrap(record).getLong(Long.BYTES + 1))
+                .collect(Collectors.toList())).containsExactly(3L, 4L, 5L, 6L);
+
+        records.clear();
+        assertThat(log.awaitAfter(2, 2, 0, records)).isTrue();
+        assertThat(sequences(records)).containsExactly(3L, 4L);
+
+        records.clear();
+        assertThat(log.awaitAfter(1, 10, 0, records)).isFalse();
+        assertThat(records).isEmpty();
+    }
+
+    @Test
+    void awaitAfterWaitsForTheNextRecordOrTimesOut() throws Exception {
+        ReplicationLog log = new ReplicationLog(8);
+        appendDeletes(log, 2);
+
+        List<byte[]> records = new ArrayList<>();
+        assertThat(log.awaitAfter(2, 10, 20, records)).isTrue();
+        assertThat(records).isEmpty();
+
+        CompletableFuture<List<byte[]>> waiting = CompletableFuture.supplyAsync(() -> {
+            List<byte[]> received = new ArrayList<>();
+            try {
+                log.awaitAfter(2, 10, 10_000, received);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return received;
+        });
+        Thread.sleep(50);
+        log.append(MutationLog.DELETE, MutationLog.encodeDelete(3));
+        assertThat(sequences(waiting.get(10, TimeUnit.SECONDS))).containsExactly(3L);
+    }
+
+    @Test
+    void capacityMustBePositive() {
+        assertThatThrownBy(() -> new ReplicationLog(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static void appendDeletes(ReplicationLog log, long count) {
+        for (long id = 1; id <= count; id++) {
+            assertThat(log.append(MutationLog.DELETE, MutationLog.encodeDelete(id))).isEqualTo(id);
+        }
+    }
+
+    private static List<Long> sequences(List<byte[]> records) {
+        return records.stream().map(record -> ByteBuffer.wrap(record).getLong()).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,241 @@
+package com.spectra.demo.replication;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.spectra.demo.cache.UserJsonCache;
+import com.spectra.demo.logging.EventLogger;
+import com.spectra.demo.model.User;
+import com.spectra.demo.persistence.MutationLog;
+import com.spectra.demo.persistence.UserCodec;
+import com.spectra.demo.repository.InMemoryUserRepository;
+import com.spectra.demo.repository.UserRepository;
+import com.spectra.demo.repository.WriteListener;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.BindException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static com.spectra.demo.replication.ReplicationProtocol.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * A leader and a follower over two in-memory stores, connected on an ephemeral loopback port
+ */
+class ReplicationLoopbackTest {
+
+    private static final EventLogger EVENTS = new EventLogger(EventLogger.Level.OFF, 2);
+    private static final String HOST = "127.0.0.1";
+    private static final long TIMEOUT_MILLIS = 10_000;
+    private static final int LOG_CAPACITY = 64;
+
+    private InMemoryUserRepository leader;
+    private ReplicationLog log;
+    private ReplicationServer server;
+    private InMemoryUserRepository follower;
+    // Resets the follower's store went through, one per copy loaded
+    private final AtomicInteger copies = new AtomicInteger();
+    private ReplicationClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        leader = new InMemoryUserRepository();
+        log = new ReplicationLog(LOG_CAPACITY);
+        leader.addWriteListener(log);
+        for (int i = 0; i < 20; i++) {
+            leader.create(user(i));
+        }
+        server = new ReplicationServer(HOST, 0, log, leader, EVENTS);
+
+        follower = new InMemoryUserRepository();
+        follower.addWriteListener(new WriteListener() {
+            @Override
+            public void put(User user) {
+            }
+
+            @Override
+            public void delete(long id) {
+            }
+
+            @Override
+            public void reset(Collection<User> seed) {
+                copies.incrementAndGet();
+            }
+        });
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (client != null) {
+            client.close();
+        }
+        server.close();
+    }
+
+    @Test
+    void followerLoadsACopyAndThenAppliesStreamedRecords() {
+        client = startClient(server.port());
+        awaitCaughtUp();
+        assertThat(client.runId()).isEqualTo(log.runId());
+        assertThat(copies).hasValue(1);
+        assertSameUsers();
+
+        User updated = user(100);
+        updated.setName("Renamed");
+        assertThat(leader.update(1, updated, UserRepository.ANY_VERSION).isOk()).isTrue();
+        assertThat(leader.delete(2).isOk()).isTrue();
+        for (int i = 20; i < 40; i++) {
+            leader.create(user(i));
+        }
+        awaitCaughtUp();
+
+        assertThat(copies).hasValue(1);
+        assertThat(follower.findById(2)).isEmpty();
+        assertThat(follower.findById(1).get().getName()).isEqualTo("Renamed");
+        assertSameUsers();
+    }
+
+    @Test
+    void reconnectingFollowerResumesFromItsAppliedSequence() throws Exception {
+        client = startClient(server.port());
+        awaitCaughtUp();
+        long resumedFrom = client.appliedSequence();
+
+        // Writes while the leader is unreachable stay in its log, well within the ring
+        int port = server.port();
+        server.close();
+        for (int i = 20; i < 30; i++) {
+            leader.create(user(i));
+        }
+        server = restartServer(port);
+        awaitCaughtUp();
+
+        assertThat(client.appliedSequence()).isGreaterThan(resumedFrom);
+        assertThat(copies).as("resumed without a copy").hasValue(1);
+        assertSameUsers();
+    }
+
+    @Test
+    void followerTooFarBehindTheRingLoadsANewCopy() throws Exception {
+        client = startClient(server.port());
+        awaitCaughtUp();
+
+        int port = server.port();
+        server.close();
+        for (int i = 20; i < 20 + LOG_CAPACITY * 2; i++) {
+            leader.create(user(i));
+        }
+        assertThat(log.retains(client.appliedSequence())).isFalse();
+        server = restartServer(port);
+        awaitCaughtUp();
+
+        assertThat(copies).hasValue(2);
+        assertSameUsers();
+    }
+
+    @Test
+    void followerThatSeesAGapDropsItsPositionInsteadOfApplyingPastIt() throws Exception {
+        try (ServerSocket fakeLeader = new ServerSocket(0, 1, InetAddress.getByName(HOST))) {
+            client = startClient(fakeLeader.getLocalPort());
+
+            try (Socket connection = fakeLeader.accept()) {
+                assertThat(readHandshake(connection)).containsExactly(0L, 0L);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+                out.writeByte(SNAPSHOT);
+                out.writeLong(42);
+                User copied = user(1);
+                copied.setId(1L);
+                byte[] encoded = UserCodec.encode(copied);
+                out.writeByte(USER);
+                out.writeInt(encoded.length);
+                out.write(encoded);
+                out.writeByte(SNAPSHOT_END);
+                out.writeLong(5);
+                out.writeLong(2);
+                // Record 6 never arrives
+                writeRecord(out, 7, MutationLog.encodeDelete(1));
+                out.flush();
+
+                assertThat(client.awaitApplied(5, TIMEOUT_MILLIS)).isTrue();
+            }
+
+            // The follower reconnects asking for a copy, still holding what it had before the gap
+            try (Socket connection = fakeLeader.accept()) {
+                assertThat(readHandshake(connection)).containsExactly(0L, 5L);
+            }
+            assertThat(client.appliedSequence()).isEqualTo(5);
+            assertThat(follower.findById(1)).isPresent();
+        }
+    }
+
+    private ReplicationClient startClient(int port) {
+        ObjectMapper objectMapper = new ObjectMapper();
+        ReplicationClient started = new ReplicationClient(HOST, port, follower,
+                new UserJsonCache(objectMapper, 1_000, new SimpleMeterRegistry()), EVENTS);
+        started.start();
+        return started;
+    }
+
+    private ReplicationServer restartServer(int port) throws Exception {
+        // The closed connections can hold the port for a moment; the follower keeps retrying meanwhile
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (true) {
+            try {
+                return new ReplicationServer(HOST, port, log, leader, EVENTS);
+            } catch (BindException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    private void awaitCaughtUp() {
+        assertThat(client.awaitApplied(log.lastSequence(), TIMEOUT_MILLIS))
+                .as("follower applied up to %d, has %d", log.lastSequence(), client.appliedSequence())
+                .isTrue();
+    }
+
+    private void assertSameUsers() {
+        assertThat(describe(follower)).isEqualTo(describe(leader));
+    }
+
+    private static List<String> describe(UserRepository users) {
+        return users.findAll().stream()
+                .map(user -> user.getId() + "|" + user.getVersion() + "|" + user.getName() + "|"
+                        + user.getEmail() + "|" + user.getAge() + "|" + user.getDepartment())
+                .collect(Collectors.toList());
+    }
+
+    private static long[] readHandshake(Socket connection) throws IOException {
+        DataInputStream in = new DataInputStream(connection.getInputStream());
+        assertThat(in.readInt()).isEqualTo(MAGIC);
+        assertThat(in.readInt()).isEqualTo(VERSION);
+        return new long[]{in.readLong(), in.readLong()};
+    }
+
+    private static void writeRecord(DataOutputStream out, long sequence, byte[] body) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(Long.BYTES + 1 + body.length);
+        record.putLong(sequence).put(MutationLog.DELETE).put(body);
+        out.writeByte(RECORD);
+        out.writeInt(record.capacity());
+        out.write(record.array());
+    }
+
+    private static User user(int n) {
+        return new User(null, "User " + n, "user" + n + "@example.com", 20 + n % 50, n % 2 == 0 ? "Engineering" : "Sales");
+    }
+}
@@ -0,0 +1,138 @@
+package com.spectra.demo.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ConcurrentLongMapTest {
+
+    @Test
+    void deleteHeavyWorkloadMatchesAHashMap() {
+        // One stripe, so every key shares one table and its probe chains
+        ConcurrentLongMap<String> map = new ConcurrentLongMap<>(1);
+        Map<Long, String> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            long key = random.nextInt(4096) - 2048;
+            int operation = random.nextInt(10);
+            if (operation < 4) {
+                String value = "v" + i;
+                assertThat(map.put(key, value)).isEqualTo(expected.put(key, value));
+            } else if (operation < 8) {
+                assertThat(map.remove(key)).isEqualTo(expected.remove(key));
+            } else if (operation < 9) {
+                String value = "c" + i;
+                String next = random.nextBoolean() ? value : null;
+                assertThat(map.computeIfPresent(key, current -> next))
+                        .isEqualTo(expected.computeIfPresent(key, (k, current) -> next));
+            } else {
+                assertThat(map.get(key)).isEqualTo(expected.get(key));
+            }
+            assertThat(map.size()).isEqualTo(expected.size());
+        }
+        for (long key = -2048; key < 2048; key++) {
+            assertThat(map.get(key)).isEqualTo(expected.get(key));
+        }
+        List<String> values = new ArrayList<>();
+        map.valuesInto(values);
+        assertThat(values).containsExactlyInAnyOrderElementsOf(expected.values());
+    }
+
+    @Test
+    void removingFromLongChainsKeepsTheRestReachable() {
+        ConcurrentLongMap<Long> map = new ConcurrentLongMap<>(1);
+        // Multiples of a large power of two share their low bits before spreading
+        for (long i = 0; i < 10_000; i++) {
+            map.put(i << 20, i);
+        }
+        for (long i = 0; i < 10_000; i += 2) {
+            assertThat(map.remove(i << 20)).isEqualTo(i);
+        }
+        assertThat(map.size()).isEqualTo(5_000);
+        for (long i = 0; i < 10_000; i++) {
+            assertThat(map.get(i << 20)).isEqualTo(i % 2 == 0 ? null : i);
+        }
+        for (long i = 0; i < 10_000; i += 2) {
+            assertThat(map.put(i << 20, -i)).isNull();
+        }
+        for (long i = 0; i < 10_000; i++) {
+            assertThat(map.get(i << 20)).isEqualTo(i % 2 == 0 ? -i : i);
+        }
+    }
+
+    @Test
+    void readersNeverMissAStableKeyWhileWritersResizeAndDelete() throws Exception {
+        ConcurrentLongMap<Long> map = new ConcurrentLongMap<>(4);
+        for (long key = -1; key >= -1_000; key--) {
+            map.put(key, key);
+        }
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < 3; t++) {
+                long base = t * 1_000_000L;
+                writers.add(executor.submit(() -> {
+                    for (int round = 0; round < 5; round++) {
+                        for (long key = base; key < base + 20_000; key++) {
+                            map.put(key, key);
+                        }
+                        for (long key = base; key < base + 20_000; key++) {
+                            assertThat(map.remove(key)).isEqualTo(key);
+                        }
+                    }
+                }));
+            }
+            Future<Long> reader = executor.submit(() -> {
+                long reads = 0;
+                while (running.get()) {
+                    for (long key = -1; key >= -1_000; key--) {
+                        assertThat(map.get(key)).isEqualTo(key);
+                        reads++;
+                    }
+                }
+                return reads;
+            });
+            for (Future<?> writer : writers) {
+                writer.get(60, TimeUnit.SECONDS);
+            }
+            running.set(false);
+            assertThat(reader.get(60, TimeUnit.SECONDS)).isPositive();
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(map.size()).isEqualTo(1_000);
+    }
+
+    @Test
+    void clearEmptiesEveryStripe() {
+        ConcurrentLongMap<Long> map = new ConcurrentLongMap<>();
+        for (long key = 0; key < 5_000; key++) {
+            map.put(key, key);
+        }
+        map.clear();
+        assertThat(map.size()).isZero();
+        assertThat(map.get(42)).isNull();
+        map.put(42, 1L);
+        assertThat(map.get(42)).isEqualTo(1L);
+    }
+
+    @Test
+    void rejectsStripeCountsThatAreNotPowersOfTwo() {
+        assertThatThrownBy(() -> new ConcurrentLongMap<>(3)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new ConcurrentLongMap<>(128)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new ConcurrentLongMap<String>().put(1, null)).isInstanceOf(NullPointerException.class);
+    }
+}
@@ -0,0 +1,54 @@
+package com.spectra.demo.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DepartmentDictionaryTest {
+
+    @Test
+    void matchesTheSpellingsEqualsIgnoreCaseAccepts() {
+        List<String> names = List.of("Engineering", "ENGINEERING", "engineering", "Sales",
+                "Ǆ", "ǅ", "ǆ", "Straße", "STRASSE", "İstanbul", "istanbul",
+                "𐐀", "𐐨", "K", "K");
+        DepartmentDictionary dictionary = new DepartmentDictionary();
+        names.forEach(dictionary::encode);
+
+        for (String query : names) {
+            BitSet expected = new BitSet();
+            for (int code = 0; code < names.size(); code++) {
+                if (names.get(code).equalsIgnoreCase(query)) {
+                    expected.set(code);
+                }
+            }
+            assertThat(dictionary.matchingIgnoreCase(query)).as(query).isEqualTo(expected);
+        }
+        assertThat(dictionary.matchingIgnoreCase("Marketing").isEmpty()).isTrue();
+    }
+
+    @Test
+    void keepsCodesStableAsItGrows() {
+        DepartmentDictionary dictionary = new DepartmentDictionary();
+        for (int i = 0; i < 1_000; i++) {
+            assertThat(dictionary.encode("Department " + i)).isEqualTo(i);
+        }
+        assertThat(dictionary.size()).isEqualTo(1_000);
+        for (int i = 0; i < 1_000; i++) {
+            assertThat(dictionary.encode("Department " + i)).isEqualTo(i);
+            assertThat(dictionary.decode(i)).isEqualTo("Department " + i);
+        }
+        assertThat(dictionary.encode(null)).isEqualTo(DepartmentDictionary.NONE);
+        assertThat(dictionary.decode(DepartmentDictionary.NONE)).isNull();
+    }
+
+    @Test
+    void lookupsReturnCopiesCallersCanChange() {
+        DepartmentDictionary dictionary = new DepartmentDictionary();
+        dictionary.encode("Sales");
+        dictionary.matchingIgnoreCase("sales").clear();
+        assertThat(dictionary.matchingIgnoreCase("SALES").cardinality()).isEqualTo(1);
+    }
+}
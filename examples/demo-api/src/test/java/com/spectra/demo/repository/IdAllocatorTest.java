@@ -0,0 +1,137 @@
+package com.spectra.demo.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IdAllocatorTest {
+
+    @Test
+    void concurrentAllocationsAreUniqueAndBelowTheLimit() throws Exception {
+        IdAllocator ids = new IdAllocator(64, 8);
+        List<List<Long>> allocated = allocateConcurrently(ids, 8, 10_000);
+
+        Set<Long> unique = new HashSet<>();
+        allocated.forEach(unique::addAll);
+        assertThat(unique).hasSize(8 * 10_000);
+        assertThat(unique).allMatch(id -> id >= 1 && id < ids.limit());
+    }
+
+    @Test
+    void advanceSkipsBlocksOnlyUpToTheNewFloor() {
+        IdAllocator ids = new IdAllocator(64, 2);
+        assertThat(ids.next(0)).isEqualTo(1);
+        assertThat(ids.next(1)).isEqualTo(65);
+
+        // Inside slot 0's block: it skips ahead; slot 1's block lies wholly above and is kept
+        ids.advance(10);
+        assertThat(ids.next(0)).isEqualTo(10);
+        assertThat(ids.next(1)).isEqualTo(66);
+
+        // Below what is already handed out: nothing moves
+        ids.advance(5);
+        assertThat(ids.next(0)).isEqualTo(11);
+
+        // Past slot 0's block: it claims a fresh one from the limit
+        ids.advance(100);
+        assertThat(ids.next(0)).isEqualTo(129);
+        assertThat(ids.next(1)).isEqualTo(100);
+    }
+
+    @Test
+    void resetDropsEveryBlock() {
+        IdAllocator ids = new IdAllocator(64, 2);
+        ids.next(0);
+        ids.next(1);
+        ids.reset(5);
+        assertThat(ids.limit()).isEqualTo(5);
+        assertThat(ids.next(1)).isEqualTo(5);
+        assertThat(ids.next(0)).isEqualTo(69);
+    }
+
+    @Test
+    void nextAfterARacingResetNeverReturnsAnIdInUse() throws Exception {
+        int threads = 4;
+        for (int round = 0; round < 20; round++) {
+            IdAllocator ids = new IdAllocator(64, threads);
+            for (int i = 0; i < 1000; i++) {
+                ids.next(i % threads);
+            }
+
+            AtomicBoolean reset = new AtomicBoolean();
+            AtomicBoolean running = new AtomicBoolean(true);
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<List<Long>>> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int slot = t;
+                workers.add(executor.submit(() -> {
+                    List<Long> afterReset = new ArrayList<>();
+                    while (running.get()) {
+                        boolean started = reset.get();
+                        long id = ids.next(slot);
+                        if (started) {
+                            afterReset.add(id);
+                        }
+                    }
+                    return afterReset;
+                }));
+            }
+            Thread.sleep(2);
+            // Seed users 1..4 stay in use; IDs up to the old limit are free again
+            ids.reset(5);
+            reset.set(true);
+            // Long enough for the counter to climb back past the IDs claimed before the reset
+            Thread.sleep(20);
+            running.set(false);
+
+            Set<Long> unique = new HashSet<>();
+            for (Future<List<Long>> worker : workers) {
+                for (long id : worker.get(30, TimeUnit.SECONDS)) {
+                    assertThat(id).isGreaterThanOrEqualTo(5);
+                    assertThat(unique.add(id)).as("ID %d handed out twice", id).isTrue();
+                }
+            }
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void rejectsEmptyBlocks() {
+        assertThatThrownBy(() -> new IdAllocator(0, 4)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static List<List<Long>> allocateConcurrently(IdAllocator ids, int threads, int perThread)
+            throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<List<Long>>> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                workers.add(executor.submit(() -> {
+                    List<Long> allocated = new ArrayList<>(perThread);
+                    for (int i = 0; i < perThread; i++) {
+                        allocated.add(ids.next());
+                    }
+                    return allocated;
+                }));
+            }
+            List<List<Long>> all = new ArrayList<>();
+            for (Future<List<Long>> worker : workers) {
+                all.add(worker.get(30, TimeUnit.SECONDS));
+            }
+            return all;
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.spectra.demo.repository;
+
+import org.junit.jupiter.api.Nested;
+
+class InMemoryUserRepositoryTest extends UserRepositoryContract {
+
+    @Override
+    protected UserRepository newRepository() {
+        return new InMemoryUserRepository();
+    }
+
+    @Nested
+    class WithIdBlocks extends UserRepositoryContract {
+
+        @Override
+        protected UserRepository newRepository() {
+            return new InMemoryUserRepository(64);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.spectra.demo.repository;
+
+import com.spectra.demo.model.User;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OffHeapUserRepositoryTest extends UserRepositoryContract {
+
+    @Override
+    protected UserRepository newRepository() {
+        return new OffHeapUserRepository();
+    }
+
+    @Test
+    void restoringIdsOutOfOrderKeepsEveryEmailReachable() {
+        OffHeapUserRepository users = new OffHeapUserRepository();
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1; id <= 3000; id++) {
+            ids.add(id);
+        }
+        Collections.shuffle(ids, new Random(7));
+        for (long id : ids) {
+            User user = new User(id, "User " + id, "user" + id + "@example.com", 30, "Engineering");
+            user.setVersion(id);
+            users.restore(user);
+        }
+
+        assertThat(users.count()).isEqualTo(3000);
+        List<User> all = users.findAll();
+        for (int i = 0; i < all.size(); i++) {
+            assertThat(all.get(i).getId()).isEqualTo(i + 1);
+            assertThat(all.get(i).getEmail()).isEqualTo("user" + (i + 1) + "@example.com");
+        }
+        for (long id = 1; id <= 3000; id++) {
+            User copy = new User(null, "Copy", "user" + id + "@example.com", 30, "Sales");
+            assertThat(users.create(copy).getStatus()).isEqualTo(WriteResult.Status.DUPLICATE_EMAIL);
+        }
+
+        // Moving or dropping an email must find the slot of the row it now lives in
+        for (long id = 1; id <= 3000; id += 2) {
+            User moved = new User(null, "Moved " + id, "moved" + id + "@example.com", 31, "Sales");
+            assertThat(users.update(id, moved).isOk()).isTrue();
+            assertThat(users.delete(id + 1).isOk()).isTrue();
+        }
+        for (long id = 1; id <= 3000; id += 2) {
+            assertThat(users.create(new User(null, "Again", "user" + (id + 1) + "@example.com", 30, "Sales")).isOk())
+                    .isTrue();
+            assertThat(users.create(new User(null, "Again", "user" + id + "@example.com", 30, "Sales")).isOk())
+                    .isTrue();
+            assertThat(users.create(new User(null, "Again", "moved" + id + "@example.com", 30, "Sales")).getStatus())
+                    .isEqualTo(WriteResult.Status.DUPLICATE_EMAIL);
+        }
+    }
+}
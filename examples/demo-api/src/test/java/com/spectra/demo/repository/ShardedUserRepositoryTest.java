@@ -0,0 +1,20 @@
+package com.spectra.demo.repository;
+
+import org.junit.jupiter.api.Nested;
+
+class ShardedUserRepositoryTest extends UserRepositoryContract {
+
+    @Override
+    protected UserRepository newRepository() {
+        return new ShardedUserRepository(16);
+    }
+
+    @Nested
+    class WithIdBlocks extends UserRepositoryContract {
+
+        @Override
+        protected UserRepository newRepository() {
+            return new ShardedUserRepository(16, 64);
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package com.spectra.demo.repository;
+
+import com.spectra.demo.model.BatchOperation;
+import com.spectra.demo.model.User;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks every UserRepository implementation must pass; subclasses supply the store
+ */
+abstract class UserRepositoryContract {
+
+    protected abstract UserRepository newRepository();
+
+    @Test
+    void concurrentCreatesAndUpdatesNeverShareAnEmail() throws Exception {
+        UserRepository users = newRepository();
+        int emails = 64;
+        runConcurrently(8, 2_000, random -> {
+            String email = "pool" + random.nextInt(emails) + "@example.com";
+            if (random.nextBoolean()) {
+                users.create(user(email, "Engineering"));
+            } else {
+                users.update(1 + random.nextLong(Math.max(1, users.nextId() - 1)), user(email, "Sales"));
+            }
+        });
+
+        List<User> stored = users.findAll();
+        Set<String> owned = stored.stream().map(User::getEmail).collect(Collectors.toSet());
+        assertThat(owned).hasSize(stored.size());
+        for (int i = 0; i < emails; i++) {
+            String email = "pool" + i + "@example.com";
+            WriteResult again = users.create(user(email, "Engineering"));
+            // A free address must not be held by a stale reservation, a taken one must be reserved
+            assertThat(again.isOk()).as(email).isEqualTo(!owned.contains(email));
+        }
+    }
+
+    @Test
+    void cursorPagingVisitsEveryUserOnceInIdOrder() {
+        UserRepository users = newRepository();
+        for (int i = 0; i < 1_000; i++) {
+            long id = users.create(user("page" + i + "@example.com", "Engineering")).getUser().getId();
+            if (i % 10 == 3) {
+                users.delete(id);
+            }
+        }
+
+        List<Long> paged = new ArrayList<>();
+        Long after = null;
+        do {
+            UserPage page = users.findPage(after, 7);
+            assertThat(page.getUsers()).hasSizeLessThanOrEqualTo(7);
+            page.getUsers().forEach(user -> paged.add(user.getId()));
+            after = page.getNextCursor();
+        } while (after != null);
+
+        List<Long> expected = users.findAll().stream().map(User::getId).sorted().collect(Collectors.toList());
+        assertThat(paged).hasSize(900).isEqualTo(expected);
+        assertThat(users.findPage(expected.get(expected.size() - 1), 7).getUsers()).isEmpty();
+    }
+
+    @Test
+    void departmentLookupIgnoresCaseAndFollowsWrites() {
+        UserRepository users = newRepository();
+        long engineer = users.create(user("a@example.com", "Engineering")).getUser().getId();
+        long lowercase = users.create(user("b@example.com", "engineering")).getUser().getId();
+        users.create(user("c@example.com", "Sales"));
+
+        assertThat(ids(users.findByDepartment("ENGINEERING"))).containsExactlyInAnyOrder(engineer, lowercase);
+        long engineering = users.departmentVersion("Engineering");
+        long sales = users.departmentVersion("sales");
+        long marketing = users.departmentVersion("Marketing");
+
+        users.update(lowercase, user("b@example.com", "Sales"));
+        assertThat(ids(users.findByDepartment("engineering"))).containsExactly(engineer);
+        assertThat(users.findByDepartment("SALES")).hasSize(2);
+        assertThat(users.departmentVersion("Engineering")).isGreaterThan(engineering);
+        assertThat(users.departmentVersion("sales")).isGreaterThan(sales);
+        assertThat(users.departmentVersion("Marketing")).isEqualTo(marketing);
+
+        users.delete(engineer);
+        assertThat(users.findByDepartment("Engineering")).isEmpty();
+        assertThat(users.findByDepartment("Unknown")).isEmpty();
+    }
+
+    @Test
+    void restoreReplacesUsersAndMovesIdsAndVersionsPastThem() {
+        UserRepository users = newRepository();
+        users.restore(stored(100, 50, "old@example.com", "Engineering"));
+        users.restore(stored(100, 60, "new@example.com", "Sales"));
+
+        assertThat(users.findById(100)).hasValueSatisfying(user -> {
+            assertThat(user.getEmail()).isEqualTo("new@example.com");
+            assertThat(user.getVersion()).isEqualTo(60);
+        });
+        assertThat(users.count()).isEqualTo(1);
+        assertThat(users.findByDepartment("Engineering")).isEmpty();
+        assertThat(users.create(user("old@example.com", "Sales")).isOk()).isTrue();
+        assertThat(users.create(user("new@example.com", "Sales")).getStatus())
+                .isEqualTo(WriteResult.Status.DUPLICATE_EMAIL);
+
+        User created = users.create(user("next@example.com", "Sales")).getUser();
+        assertThat(created.getId()).isGreaterThan(100);
+        assertThat(users.nextId()).isGreaterThan(created.getId());
+        // Versions of one ID never repeat, so an update goes past the restored version
+        assertThat(users.update(100, user("new@example.com", "Sales")).getUser().getVersion()).isGreaterThan(60);
+
+        users.advanceNextId(500);
+        assertThat(users.create(user("later@example.com", "Sales")).getUser().getId()).isGreaterThanOrEqualTo(500);
+    }
+
+    @Test
+    void resetReplacesEveryUserAndRestartsIds() {
+        UserRepository users = newRepository();
+        for (int i = 0; i < 50; i++) {
+            users.create(user("before" + i + "@example.com", "Engineering"));
+        }
+
+        users.reset(List.of(
+                seed(1, "seed1@example.com", "Engineering"),
+                seed(2, "seed2@example.com", "Sales"),
+                seed(3, "seed3@example.com", "Sales")));
+
+        assertThat(users.count()).isEqualTo(3);
+        assertThat(users.findByDepartment("sales")).hasSize(2);
+        assertThat(users.findAll()).allMatch(user -> user.getVersion() > 0);
+        assertThat(users.create(user("seed2@example.com", "Sales")).getStatus())
+                .isEqualTo(WriteResult.Status.DUPLICATE_EMAIL);
+        assertThat(users.create(user("before7@example.com", "Sales")).getUser().getId()).isEqualTo(4);
+    }
+
+    @Test
+    void resetRacingWritesLeavesAConsistentStore() throws Exception {
+        UserRepository users = newRepository();
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            writers.add(executor.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (running.get()) {
+                    String email = "race" + random.nextInt(200) + "@example.com";
+                    if (random.nextInt(4) == 0) {
+                        users.delete(1 + random.nextLong(Math.max(1, users.nextId() - 1)));
+                    } else {
+                        users.create(user(email, "Engineering"));
+                    }
+                }
+            }));
+        }
+        try {
+            for (int i = 0; i < 50; i++) {
+                users.reset(List.of(seed(1, "race1@example.com", "Engineering"),
+                        seed(2, "race2@example.com", "Sales")));
+                Thread.sleep(1);
+            }
+        } finally {
+            running.set(false);
+            for (Future<?> writer : writers) {
+                writer.get(30, TimeUnit.SECONDS);
+            }
+            executor.shutdown();
+        }
+
+        List<User> stored = users.findAll();
+        assertThat(users.count()).isEqualTo(stored.size());
+        assertThat(ids(stored)).doesNotHaveDuplicates().allMatch(id -> id < users.nextId());
+        for (User user : stored) {
+            assertThat(users.create(user(user.getEmail(), "Sales")).getStatus())
+                    .as("email of user %d", user.getId())
+                    .isEqualTo(WriteResult.Status.DUPLICATE_EMAIL);
+        }
+        // New users never land on an ID that is still taken
+        for (int i = 0; i < 500; i++) {
+            assertThat(users.create(user("after" + i + "@example.com", "Sales")).isOk()).isTrue();
+        }
+        assertThat(ids(users.findAll())).doesNotHaveDuplicates().hasSize(stored.size() + 500);
+    }
+
+    @Test
+    void writeListenerSeesEveryUsersWritesInStoreOrder() throws Exception {
+        UserRepository users = newRepository();
+        Map<Long, String> mirror = new ConcurrentHashMap<>();
+        users.addWriteListener(new WriteListener() {
+            @Override
+            public void put(User user) {
+                mirror.put(user.getId(), user.getVersion() + "|" + user.getEmail());
+            }
+
+            @Override
+            public void delete(long id) {
+                mirror.remove(id);
+            }
+
+            @Override
+            public void reset(Collection<User> seed) {
+                mirror.clear();
+                seed.forEach(this::put);
+            }
+        });
+        users.reset(List.of(seed(1, "seed1@example.com", "Engineering")));
+        runConcurrently(4, 2_000, random -> {
+            // A few hot IDs, so writes to the same user keep meeting
+            long id = 1 + random.nextInt(8);
+            String email = "mirror" + random.nextInt(32) + "@example.com";
+            switch (random.nextInt(4)) {
+                case 0:
+                    users.create(user(email, "Engineering"));
+                    break;
+                case 1:
+                    users.delete(id);
+                    break;
+                case 2:
+                    users.restore(stored(id, users.version() + 1_000_000, "restored" + id + "@example.com", "Sales"));
+                    break;
+                default:
+                    users.update(id, user(email, "Sales"));
+            }
+        });
+
+        Map<Long, String> expected = new HashMap<>();
+        users.forEach(user -> expected.put(user.getId(), user.getVersion() + "|" + user.getEmail()));
+        assertThat(mirror).isEqualTo(expected);
+    }
+
+    @Test
+    void batchesAreNotInterleavedWithOtherWrites() throws Exception {
+        UserRepository users = newRepository();
+        List<String> written = Collections.synchronizedList(new ArrayList<>());
+        users.addWriteListener(new WriteListener() {
+            @Override
+            public void put(User user) {
+                written.add(user.getEmail());
+            }
+
+            @Override
+            public void delete(long id) {
+                written.add("deleted");
+            }
+
+            @Override
+            public void reset(Collection<User> seed) {
+            }
+        });
+        AtomicLong sequence = new AtomicLong();
+        int batchSize = 20;
+        runConcurrently(4, 200, random -> {
+            long n = sequence.incrementAndGet();
+            if (random.nextBoolean()) {
+                List<BatchOperation> batch = new ArrayList<>(batchSize);
+                for (int i = 0; i < batchSize; i++) {
+                    batch.add(new BatchOperation(BatchOperation.Type.CREATE, null, user("batch" + n + "-" + i + "@example.com", "Sales")));
+                }
+                users.applyBatch(batch);
+            } else {
+                long id = users.create(user("single" + n + "@example.com", "Engineering")).getUser().getId();
+                users.delete(id);
+            }
+        });
+
+        // Every batch's writes arrive back to back, in batch order
+        for (int i = 0; i < written.size(); i++) {
+            String email = written.get(i);
+            if (email.startsWith("batch") && email.contains("-0@")) {
+                String prefix = email.substring(0, email.indexOf('-') + 1);
+                for (int j = 1; j < batchSize; j++) {
+                    assertThat(written.get(i + j)).isEqualTo(prefix + j + "@example.com");
+                }
+            }
+        }
+    }
+
+    static User user(String email, String department) {
+        return new User(null, "User " + email, email, 30, department);
+    }
+
+    static User stored(long id, long version, String email, String department) {
+        User user = new User(id, "User " + id, email, 40, department);
+        user.setVersion(version);
+        return user;
+    }
+
+    static User seed(long id, String email, String department) {
+        return new User(id, "Seed " + id, email, 25, department);
+    }
+
+    static List<Long> ids(List<User> users) {
+        return users.stream().map(User::getId).collect(Collectors.toList());
+    }
+
+    interface Step {
+        void run(ThreadLocalRandom random);
+    }
+
+    static void runConcurrently(int threads, int stepsPerThread, Step step) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                workers.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < stepsPerThread; i++) {
+                        step.run(random);
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}